@@ -0,0 +1,205 @@
+package bitap;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for the Bitap search paths, across needle lengths,
+ * Levenshtein distances, alphabets and haystack lengths. Needles longer than
+ * 63 characters exercise the multi-word paths. Haystacks are random over the
+ * alphabet, from a fixed seed, and always contain the needle at least once.
+ * Matches are passed to a Blackhole as they are found, rather than
+ * collected into lists, so the benchmarks measure searching rather than
+ * boxing.
+ * 
+ * Two corners of the parameter grid are cut back so that every
+ * combination fits in the forked JVM's heap. A UNICODE haystack is at most
+ * 2^29 characters, as a String of UTF-16 characters cannot reach 2^30. The
+ * approximate searches pair each needle length with Levenshtein distances
+ * up to a quarter of it, and are not run beyond: there, most positions of a
+ * random haystack match, and the benchmark would measure storing positions
+ * rather than searching.
+ * 
+ * Run main() to benchmark with the GC profiler, which reports the memory
+ * allocated per operation. Any JMH command-line options are passed through,
+ * e.g. "-p alphabet=DNA -p haystackLength=1048576" to restrict the
+ * parameters.
+ * 
+ * @author Mason M Lai
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class BitapBenchmark {
+	private static final long SEED = 42;
+	
+	/**
+	 * The alphabets benchmarked. UNICODE is a sparse alphabet of CJK
+	 * characters, which takes the binary-search path of the symbol coding.
+	 * Its characters take two bytes each, so its haystacks are capped at
+	 * 2^29 characters, the same gigabyte as the longest Latin-1 haystacks.
+	 */
+	public enum Alphabet {
+		DNA("ACGT", Integer.MAX_VALUE),
+		PROTEIN("ACDEFGHIKLMNPQRSTVWY", Integer.MAX_VALUE),
+		ASCII(range(' ', '~', 1), Integer.MAX_VALUE),
+		UNICODE(range('\u4e00', '\u9fa5', 0x101), 1 << 29);
+		
+		private final String letters;
+		private final int maxLength;
+		
+		Alphabet(String letters, int maxLength) {
+			this.letters = letters;
+			this.maxLength = maxLength;
+		}
+		
+		private static String range(char first, char last, int step) {
+			StringBuilder sb = new StringBuilder();
+			for (char c = first; c <= last; c += step) {
+				sb.append(c);
+			}
+			return sb.toString();
+		}
+		
+		Set<Character> characters() {
+			Set<Character> set = new HashSet<Character>();
+			for (int i = 0; i < letters.length(); i++) {
+				set.add(letters.charAt(i));
+			}
+			return set;
+		}
+		
+		String randomSequence(Random random, int length) {
+			StringBuilder sb = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				sb.append(letters.charAt(random.nextInt(letters.length())));
+			}
+			return sb.toString();
+		}
+	}
+	
+	/**
+	 * A random haystack over the alphabet, containing a needle of the given
+	 * length taken from its middle.
+	 */
+	@State(Scope.Benchmark)
+	public static abstract class Haystack {
+		@Param({"DNA", "PROTEIN", "ASCII", "UNICODE"})
+		public Alphabet alphabet;
+		
+		@Param({"1024", "1048576", "1073741824"})
+		public int haystackLength;
+		
+		Bitap bitap;
+		String haystack;
+		
+		void generate(int needleLength) {
+			Random random = new Random(SEED);
+			int length = Math.min(haystackLength, alphabet.maxLength);
+			haystack = alphabet.randomSequence(random, length);
+			int start = (length - needleLength) / 2;
+			String needle = haystack.substring(start, start + needleLength);
+			bitap = new Bitap(needle, alphabet.characters());
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class Exact extends Haystack {
+		@Param({"4", "16", "32", "63", "150"})
+		public int needleLength;
+		
+		@Setup
+		public void setUp() {
+			generate(needleLength);
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class Approximate extends Haystack {
+		/**
+		 * The needle length and the Levenshtein distance, as "length:lev".
+		 * Only distances up to a quarter of the needle length are listed.
+		 */
+		@Param({"4:0", "4:1",
+				"16:0", "16:1", "16:2", "16:4",
+				"32:0", "32:1", "32:2", "32:4", "32:8",
+				"63:0", "63:1", "63:2", "63:4", "63:8",
+				"150:0", "150:1", "150:2", "150:4", "150:8"})
+		public String needleLengthLev;
+		
+		int lev;
+		
+		@Setup
+		public void setUp() {
+			String[] fields = needleLengthLev.split(":");
+			generate(Integer.parseInt(fields[0]));
+			lev = Integer.parseInt(fields[1]);
+		}
+	}
+	
+	@Benchmark
+	public void baezaYatesGonnet(Exact state, Blackhole blackhole) {
+		state.bitap.baezaYatesGonnet(state.haystack, blackhole::consume);
+	}
+	
+	@Benchmark
+	public void wuManber(Approximate state, Blackhole blackhole) {
+		state.bitap.wuManber(state.haystack, state.lev, blackhole::consume);
+	}
+	
+	@Benchmark
+	public boolean within(Approximate state) {
+		return state.bitap.within(state.haystack, state.lev);
+	}
+	
+	@Benchmark
+	public void myers(Approximate state, Blackhole blackhole) {
+		state.bitap.myers(state.haystack, state.lev, blackhole::consume);
+	}
+	
+	@Benchmark
+	public void parallelWuManber(Approximate state, Blackhole blackhole) {
+		state.bitap.wuManber(state.haystack, state.lev, ForkJoinPool.commonPool(),
+				blackhole::consume);
+	}
+	
+	@Benchmark
+	public void searchForward(Approximate state, Blackhole blackhole) throws IOException {
+		state.bitap.searchForward(CharBuffer.wrap(state.haystack), state.lev,
+				(start, end, distance) -> blackhole.consume(start));
+	}
+	
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(BitapBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
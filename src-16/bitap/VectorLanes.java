@@ -0,0 +1,59 @@
+package bitap;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Lanes on the Vector API. Each lane of a LongVector holds the bit array of
+ * one haystack, so a single shift, OR and test advance every haystack of a
+ * group by one character. Haystacks are aligned at position 0 and scanned
+ * from the end of the longest one; lanes past the end of a shorter haystack
+ * are fed the mask ~1, which keeps their bit array in its starting state.
+ * 
+ * @author Mason M Lai
+ */
+final class VectorLanes implements Lanes {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+	
+	@Override
+	public void firstMatches(CharSequence[] haystacks, SymbolTable symbols, long[] masks, long matchBit,
+			int[] positions) {
+		int lanes = SPECIES.length();
+		int padding = masks.length - 1;
+		int[] codes = new int[lanes];
+		int[] lengths = new int[lanes];
+		int[] first = new int[lanes];
+		
+		for (int base = 0; base < haystacks.length; base += lanes) {
+			int count = Math.min(lanes, haystacks.length - base);
+			int longest = 0;
+			for (int l = 0; l < lanes; l++) {
+				lengths[l] = l < count ? haystacks[base + l].length() : 0;
+				longest = Math.max(longest, lengths[l]);
+			}
+			Arrays.fill(first, -1);
+			LongVector bitArray = LongVector.broadcast(SPECIES, ~1L);
+			
+			for (int i = longest - 1; i >= 0; i--) {
+				for (int l = 0; l < lanes; l++) {
+					codes[l] = i < lengths[l] ? symbols.code(haystacks[base + l].charAt(i)) : padding;
+				}
+				LongVector mask = LongVector.fromArray(SPECIES, masks, 0, codes, 0);
+				bitArray = bitArray.lanewise(VectorOperators.LSHL, 1).or(mask);
+				VectorMask<Long> matches = bitArray.and(matchBit).eq(0);
+				if (matches.anyTrue()) {
+					for (int l = 0; l < count; l++) {
+						if (matches.laneIsSet(l) && i < lengths[l]) {
+							first[l] = i;
+						}
+					}
+				}
+			}
+			System.arraycopy(first, 0, positions, base, count);
+		}
+	}
+}
@@ -1,51 +1,206 @@
 package bitap;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 
 /**
  * Class for any string-matching algorithms related to the Bitap algorithm.
  * Currently contains implementations of the Baeza-Yates-Gonnet algorithm
  * for exact string matching, as well as the Wu-Manber modification for
- * approximate string matching.
+ * approximate string matching. Myers' bit-vector algorithm is included as
+ * an alternative for approximate string matching, and a substitution-only
+ * variant of Wu-Manber for matching within a Hamming distance.
  * 
  * These implementations use zeroes for matching bits and ones for non-matching
  * bits. These implementations also use left-shifts rather than right-shifts.
  * 
+ * A Bitap is immutable once constructed: the alphabet is copied, and the
+ * masks are computed up front. The same Bitap can be shared between threads
+ * and cached, much like a compiled java.util.regex.Pattern. Scratch space is
+ * allocated per search; a BitapMatcher from matcher() holds on to its scratch
+ * space for reuse by a single thread.
+ * 
  * @author Mason M Lai
  */
 public class Bitap {
+	/**
+	 * The longest needle whose bit array (needle length plus the right-most
+	 * zero column) still fits in a single long. Longer needles are spread
+	 * over several longs per row; see the multi-word implementations below.
+	 */
+	private static final int SINGLE_WORD_LIMIT = Long.SIZE - 1;
+	
+	/**
+	 * The number of characters read from a stream at a time.
+	 */
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * The number of bytes of a file mapped into memory at a time. Mappings
+	 * are limited to 2 GB, so larger files are searched a piece at a time.
+	 */
+	private static final int MAP_SIZE = 1 << 30;
+	
+	/**
+	 * The number of positions below which a parallel search stops splitting
+	 * the haystack and scans its piece directly.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 18;
+	
+	/**
+	 * The number of positions scanned between checks of the search options,
+	 * when searching with limits.
+	 */
+	private static final int OPTIONS_BLOCK_SIZE = 1 << 14;
+	
+	/**
+	 * The implementation searching many haystacks at once, vectorized if the
+	 * JDK supports it.
+	 */
+	private static final Lanes LANES = Lanes.load();
+	
 	private final String needle;
-	private final Map<Character, Long> alphabetMasks;
+	private final char[][] classes;
 	private final Set<Character> alphabet;
+	private final UnknownCharacters unknown;
+	private final Equivalences equivalences;
+	private final SymbolTable symbols;
+	private final long[] alphabetMasks;
+	private final int words;
+	private final long matchBit;
+	private final int blocks;
+	private final long scoreBit;
+	private final long[] matchVectors;
+	private final long[] forwardVectors;
+	private final long[] baseMasks;
+	private final long[] ambiguousBaseMasks;
 	
 	/**
-	 * Bitap constructor. Do not include '&' in the needle or alphabet.
-	 * The character '&' is used as a sentinel value, and there are no checks to
-	 * ensure '&' does not appear elsewhere.
+	 * Bitap constructor. Searches throw an IllegalArgumentException on
+	 * meeting a character outside the alphabet.
 	 * @param needle - the substring to search for.
 	 * @param alphabet - the total set of characters composing both the needle
-	 * and the haystack.
+	 * and the haystack. The set is copied, and never modified.
 	 */
 	public Bitap(String needle, Set<Character> alphabet) {
+		this(needle, alphabet, UnknownCharacters.REJECT);
+	}
+	
+	/**
+	 * Bitap constructor.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 */
+	public Bitap(String needle, Set<Character> alphabet, UnknownCharacters unknown) {
+		this(needle, alphabet, unknown, Equivalences.NONE);
+	}
+	
+	/**
+	 * Bitap constructor.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 * @param equivalences - characters of the needle and haystack to read as
+	 * symbols of the alphabet, e.g., to ignore case.
+	 */
+	public Bitap(String needle, Set<Character> alphabet, UnknownCharacters unknown,
+			Equivalences equivalences) {
+		this(needle, generateClasses(needle), alphabet, unknown, equivalences);
+	}
+	
+	/**
+	 * Bitap constructor for a needle whose positions each accept a class of
+	 * characters, as built by CharacterClasses. Searches throw an
+	 * IllegalArgumentException on meeting a character outside the alphabet.
+	 * @param needle - the characters accepted at each position of the
+	 * substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 */
+	public Bitap(List<Set<Character>> needle, Set<Character> alphabet) {
+		this(needle, alphabet, UnknownCharacters.REJECT);
+	}
+	
+	/**
+	 * Bitap constructor for a needle whose positions each accept a class of
+	 * characters, as built by CharacterClasses.
+	 * @param needle - the characters accepted at each position of the
+	 * substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 */
+	public Bitap(List<Set<Character>> needle, Set<Character> alphabet, UnknownCharacters unknown) {
+		this(needle, alphabet, unknown, Equivalences.NONE);
+	}
+	
+	/**
+	 * Bitap constructor for a needle whose positions each accept a class of
+	 * characters, as built by CharacterClasses.
+	 * @param needle - the characters accepted at each position of the
+	 * substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 * @param equivalences - characters of the needle and haystack to read as
+	 * symbols of the alphabet, e.g., to ignore case.
+	 */
+	public Bitap(List<Set<Character>> needle, Set<Character> alphabet, UnknownCharacters unknown,
+			Equivalences equivalences) {
+		this(CharacterClasses.toString(needle), generateClasses(needle), alphabet, unknown,
+				equivalences);
+	}
+	
+	private Bitap(String needle, char[][] classes, Set<Character> alphabet,
+			UnknownCharacters unknown, Equivalences equivalences) {
 		this.needle = needle;
-		this.alphabet = alphabet;
-		alphabet.add('&');
+		this.alphabet = Collections.unmodifiableSet(new HashSet<Character>(alphabet));
+		this.unknown = unknown;
+		this.equivalences = equivalences;
+		symbols = new SymbolTable(this.alphabet, unknown, equivalences);
+		this.classes = generateCanonicalClasses(classes);
+		words = classes.length / Long.SIZE + 1;
+		matchBit = 1L << (classes.length % Long.SIZE);
 		alphabetMasks = generateAlphabetMasks();
+		blocks = (classes.length + Long.SIZE - 1) / Long.SIZE;
+		scoreBit = 1L << ((classes.length + Long.SIZE - 1) % Long.SIZE);
+		matchVectors = generateMatchVectors();
+		forwardVectors = generateForwardVectors();
+		baseMasks = generateBaseMasks(4);
+		ambiguousBaseMasks = generateBaseMasks(5);
 	}
 	
 	/**
-	 * Bitap constructor. Do not include '&' in the needle, haystack, or alphabet.
-	 * The character '&' is used as a sentinel value, and there are no checks to
-	 * ensure '&' does not appear elsewhere.
+	 * Bitap constructor. Searches throw an IllegalArgumentException on
+	 * meeting a character outside the alphabet.
 	 * @param needle - the substring to search for.
-	 * @param haystack - the string to search in.
 	 * @param alphabet - the total set of characters (as an array) composing both
 	 * the needle and the haystack.
 	 */
@@ -54,52 +209,247 @@ public class Bitap {
 	}
 	
 	/**
-	 * Initialize the alphabet masks, one for each character of the alphabet.
+	 * The classes of a plain needle, each position accepting only its own
+	 * character.
+	 */
+	private static char[][] generateClasses(String needle) {
+		char[][] classes = new char[needle.length()][];
+		for (int pos = 0; pos < needle.length(); pos++) {
+			classes[pos] = new char[] {needle.charAt(pos)};
+		}
+		return classes;
+	}
+	
+	/**
+	 * The classes of a needle of character classes, each sorted for binary
+	 * search.
+	 */
+	private static char[][] generateClasses(List<Set<Character>> needle) {
+		char[][] classes = new char[needle.size()][];
+		for (int pos = 0; pos < classes.length; pos++) {
+			classes[pos] = new char[needle.get(pos).size()];
+			int i = 0;
+			for (Character c : needle.get(pos)) {
+				classes[pos][i++] = c;
+			}
+			Arrays.sort(classes[pos]);
+		}
+		return classes;
+	}
+	
+	/**
+	 * The classes of a needle with each character replaced by the symbol it
+	 * is read as, so that a variant in the needle matches the same
+	 * characters of the haystack as its symbol.
+	 */
+	private char[][] generateCanonicalClasses(char[][] classes) {
+		char[][] canonical = new char[classes.length][];
+		for (int pos = 0; pos < classes.length; pos++) {
+			canonical[pos] = new char[classes[pos].length];
+			for (int i = 0; i < classes[pos].length; i++) {
+				canonical[pos][i] = symbols.canonical(classes[pos][i]);
+			}
+			Arrays.sort(canonical[pos]);
+		}
+		return canonical;
+	}
+	
+	/**
+	 * @return a boolean if the given position of the needle accepts the
+	 * character, once read as a symbol
+	 */
+	private boolean accepts(int pos, char c) {
+		return Arrays.binarySearch(classes[pos], symbols.canonical(c)) >= 0;
+	}
+	
+	/**
+	 * Compile a needle over an alphabet. Equivalent to the constructor, but
+	 * reads better where the result is cached or shared, as with
+	 * Pattern.compile().
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @return the compiled needle
+	 */
+	public static Bitap compile(String needle, Set<Character> alphabet) {
+		return new Bitap(needle, alphabet);
+	}
+	
+	/**
+	 * Compile a needle over an alphabet, choosing what searches do with
+	 * characters outside the alphabet.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 * @return the compiled needle
+	 */
+	public static Bitap compile(String needle, Set<Character> alphabet, UnknownCharacters unknown) {
+		return new Bitap(needle, alphabet, unknown);
+	}
+	
+	/**
+	 * Compile a needle over an alphabet, choosing what searches do with
+	 * characters outside the alphabet, and which characters to read as
+	 * symbols of the alphabet.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack. The set is copied, and never modified.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 * @param equivalences - characters of the needle and haystack to read as
+	 * symbols of the alphabet, e.g., to ignore case.
+	 * @return the compiled needle
+	 */
+	public static Bitap compile(String needle, Set<Character> alphabet, UnknownCharacters unknown,
+			Equivalences equivalences) {
+		return new Bitap(needle, alphabet, unknown, equivalences);
+	}
+	
+	/**
+	 * @return the needle searched for, with any position accepting more than
+	 * one character written as a bracketed class
+	 */
+	public String getNeedle() {
+		return needle;
+	}
+	
+	/**
+	 * @return an unmodifiable copy of the alphabet given at construction
+	 */
+	public Set<Character> getAlphabet() {
+		return alphabet;
+	}
+	
+	/**
+	 * @return what searches do with characters outside the alphabet
+	 */
+	public UnknownCharacters getUnknownCharacters() {
+		return unknown;
+	}
+	
+	/**
+	 * @return the characters read as symbols of the alphabet
+	 */
+	public Equivalences getEquivalences() {
+		return equivalences;
+	}
+	
+	/**
+	 * Create a matcher for this needle, holding scratch space that is reused
+	 * from one search to the next. A matcher is not thread-safe; each thread
+	 * should create its own.
+	 * 
+	 * @return a new matcher
+	 */
+	public BitapMatcher matcher() {
+		return new BitapMatcher(this);
+	}
+	
+	/**
+	 * Initialize the alphabet masks, one for each character of the alphabet,
+	 * indexed by symbol code.
 	 * Each alphabet mask is the length of the needle, plus a zero at the
 	 * right-most position. Aside from this zero, other zeroes mark locations
 	 * where the corresponding letter appears. For example, if the needle were
 	 * "Mississippi", the alphabet masks would be:
-	 *
+	 * 
 	 *		M i s s i s s i p p i
-	 *  
+	 * 
 	 *  M : 0 1 1 1 1 1 1 1 1 1 1 0
 	 *  i : 1 0 1 1 0 1 1 0 1 1 0 0
 	 *  s : 1 1 0 0 1 0 0 1 1 1 1 0
 	 *  p : 1 1 1 1 1 1 1 1 0 0 1 0
-	 *  
+	 * 
+	 * Needles longer than 63 characters need more than one long per mask.
+	 * In that case the mask of the symbol with code c occupies the longs
+	 * [c * words, (c + 1) * words), least significant long first.
+	 * 
+	 * A needle position accepting a class of characters (e.g., the IUPAC
+	 * code R, for A or G) has a zero in the mask of every character of its
+	 * class, so the search itself is unchanged.
+	 * 
+	 * One more mask follows those of the alphabet, for characters outside
+	 * the alphabet, which match no position of the needle.
 	 */
-	private Map<Character, Long> generateAlphabetMasks() {
-		Map<Character, Long> masks = new HashMap<Character, Long>();
-		for (Character letter : alphabet) {
-			long mask = ~0;
-			for (int pos = 0; pos < needle.length(); pos++) {
-				if (letter.equals(needle.charAt(needle.length() - 1 - pos))) {
-					mask &= ~(1L << pos);
+	private long[] generateAlphabetMasks() {
+		long[] masks = new long[(symbols.size() + 1) * words];
+		Arrays.fill(masks, ~0L);
+		for (int code = 0; code <= symbols.size(); code++) {
+			masks[code * words] &= ~1L;
+			for (int pos = 0; pos < classes.length && code < symbols.size(); pos++) {
+				if (accepts(classes.length - 1 - pos, symbols.symbol(code))) {
+					int bit = pos + 1;
+					masks[code * words + bit / Long.SIZE] &= ~(1L << (bit % Long.SIZE));
 				}
 			}
-			masks.put(letter, (mask << 1));
 		}
 		return masks;
 	}
 	
+	/**
+	 * Initialize the match vectors used by Myers' algorithm, one for each
+	 * character of the alphabet, indexed by symbol code. These are the
+	 * alphabet masks with the right-most zero column dropped, and inverted so
+	 * that ones mark the locations where the letter appears. Myers' algorithm
+	 * has no extra column, so the needle takes blocks = ceil(m / 64) longs
+	 * rather than the m / 64 + 1 of the alphabet masks.
+	 */
+	private long[] generateMatchVectors() {
+		long[] vectors = new long[(symbols.size() + 1) * blocks];
+		for (int code = 0; code <= symbols.size(); code++) {
+			for (int b = 0; b < blocks; b++) {
+				long low = alphabetMasks[code * words + b];
+				long high = b + 1 < words ? alphabetMasks[code * words + b + 1] : ~0L;
+				vectors[code * blocks + b] = ~((low >>> 1) | (high << 63));
+			}
+		}
+		return vectors;
+	}
+	
+	/**
+	 * Initialize the match vectors of the needle as written, rather than
+	 * reversed, for scanning the haystack from start to end. These are the
+	 * match vectors with the order of the needle's bits flipped.
+	 */
+	private long[] generateForwardVectors() {
+		long[] vectors = new long[(symbols.size() + 1) * blocks];
+		int m = classes.length;
+		for (int code = 0; code <= symbols.size(); code++) {
+			for (int pos = 0; pos < m; pos++) {
+				int bit = m - 1 - pos;
+				if ((matchVectors[code * blocks + bit / Long.SIZE] & (1L << (bit % Long.SIZE))) != 0) {
+					vectors[code * blocks + pos / Long.SIZE] |= 1L << (pos % Long.SIZE);
+				}
+			}
+		}
+		return vectors;
+	}
+	
 	/**
 	 * The starting bit array, commonly denoted as 'R' in the literature.
 	 * Commonly thought of as a 2D matrix with dimensions
 	 * max-Levenshtein-distance by needle-length, with the top-most row
 	 * corresponding to a Levenshtein distance of 0, and the bottom-most
-	 * corresponding to a distance of k. Initialized as all-ones, except
-	 * for the right-most column, which is all-zeroes. This array is
-	 * updated dynamically as the algorithm progresses through the search
-	 * corpus. This implementation is just a 1D array of longs, where each
-	 * long, in binary, functions as a row of the matrix. Also, since
-	 * longs are 64-bit, the extraneous columns on the left are just all-
-	 * ones.
+	 * corresponding to a distance of k. This array is updated dynamically
+	 * as the algorithm progresses through the search corpus. This
+	 * implementation is just a 1D array of longs, where each long, in
+	 * binary, functions as a row of the matrix. Also, since longs are
+	 * 64-bit, the extraneous columns on the left are just all-ones.
+	 * 
+	 * The array starts out as it would be just past the end of the
+	 * haystack. Row k has k + 1 right-most zeroes, as the first k characters
+	 * of the needle can match the empty string by being deleted. Starting
+	 * from this state handles the end of the haystack without appending a
+	 * sentinel character to it, so every character may appear in the
+	 * haystack.
 	 * 
 	 * An example with a max-Levenshtein distance of two:
 	 * 
 	 *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-	 *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
-	 *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 1 0
+	 *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 1 0 0
+	 *  1 1 1 1 1 1 1 1 1 1 ... 1 1 1 1 1 1 1 0 0 0
 	 * |<---------------- 64-bits ---------------->|
 	 * 
 	 * @param lev - the maximum Levenshtein distance for a substring match
@@ -107,10 +457,51 @@ public class Bitap {
 	 */
 	private long[] generateBitArray(int lev) {
 		long[] bitArray = new long[lev + 1];
+		resetBitArray(bitArray);
+		return bitArray;
+	}
+	
+	/**
+	 * Resets a bit array to the starting bit array in place, so that the
+	 * same array can be reused from one haystack to the next.
+	 * 
+	 * @param bitArray - the bit array to reset, one long per row
+	 */
+	private static void resetBitArray(long[] bitArray) {
+		for (int k = 0; k < bitArray.length; k++) {
+			bitArray[k] = k < SINGLE_WORD_LIMIT ? ~0L << (k + 1) : 0;
+		}
+	}
+	
+	/**
+	 * Resets a bit array for needles longer than 63 characters to the
+	 * starting bit array in place. Each row of the matrix spans several
+	 * longs, stored consecutively with the least significant long first, so
+	 * that row k occupies the longs [k * words, (k + 1) * words). Only the
+	 * first lev + 1 rows are reset; any longs past them are left alone.
+	 * 
+	 * @param bitArray - the bit array to reset
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 */
+	private void resetWideBitArray(long[] bitArray, int lev) {
+		Arrays.fill(bitArray, 0, (lev + 1) * words, ~0L);
 		for (int k = 0; k <= lev; k++) {
-			bitArray[k] = ~1;
+			for (int bit = 0; bit <= k && bit < words * Long.SIZE; bit++) {
+				bitArray[k * words + bit / Long.SIZE] &= ~(1L << (bit % Long.SIZE));
+			}
 		}
-		return bitArray;
+	}
+	
+	/**
+	 * The number of longs of scratch space a search needs: the rows of the
+	 * bit array, plus, for needles longer than 63 characters, the two
+	 * scratch rows of wideWuManber().
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return the length of scratch space to pass to search()
+	 */
+	int scratchLength(int lev) {
+		return classes.length > SINGLE_WORD_LIMIT ? (lev + 3) * words : lev + 1;
 	}
 	
 	/**
@@ -120,21 +511,25 @@ public class Bitap {
 	 * @return an ArrayList<Integer> containing the positions where a
 	 * valid substring match can start
 	 */
-	public List<Integer> baezaYatesGonnet(String haystack) {
-		haystack = haystack + "&"; // sentinel value
-		
-		List<Integer> locatedPositions = new ArrayList<Integer>();
-		long bitArray = ~1;
-
-		for (int i = haystack.length() - 1; i >= 0; i--) {
-			bitArray = (bitArray << 1) | alphabetMasks.get(haystack.charAt(i));
-			if (0 == (bitArray & (1 << needle.length()))) {
-				locatedPositions.add(i);
-			}
-		}
-		
-		Collections.sort(locatedPositions);
-		return locatedPositions;
+	public List<Integer> baezaYatesGonnet(CharSequence haystack) {
+		IntList locatedPositions = new IntList();
+		search(haystack, 0, haystack.length(), haystack.length(), 0, false, locatedPositions);
+		return locatedPositions.toReversedList();
+	}
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm. Passes the positions of all exact matches
+	 * of the needle to the consumer, in ascending order. Positions are
+	 * collected without boxing, which matters for haystacks with many
+	 * matches.
+	 * 
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void baezaYatesGonnet(CharSequence haystack, IntConsumer consumer) {
+		IntList locatedPositions = new IntList();
+		search(haystack, 0, haystack.length(), haystack.length(), 0, false, locatedPositions);
+		locatedPositions.forEachReversed(consumer);
 	}
 	
 	/* Wu-Manber implementation notes
@@ -158,34 +553,244 @@ public class Bitap {
 	 * @return an ArrayList<Integer> containing the positions where a
 	 * valid substring match can start
 	 */
-	public List<Integer> wuManber(String haystack, int lev) {
-		haystack = haystack + "&";  // sentinel value
+	public List<Integer> wuManber(CharSequence haystack, int lev) {
+		IntList locatedPositions = new IntList();
+		search(haystack, 0, haystack.length(), haystack.length(), lev, false, locatedPositions);
+		return locatedPositions.toReversedList();
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Passes the positions of all approximate (within a
+	 * given Levenshtein distance) matches of the needle to the consumer, in
+	 * ascending order. Positions are collected without boxing, which matters
+	 * for haystacks with many matches.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void wuManber(CharSequence haystack, int lev, IntConsumer consumer) {
+		IntList locatedPositions = new IntList();
+		search(haystack, 0, haystack.length(), haystack.length(), lev, false, locatedPositions);
+		locatedPositions.forEachReversed(consumer);
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Finds all approximate (within a given Levenshtein
+	 * distance) matches of a needle within a haystack, along with the
+	 * Levenshtein distance of each. The distance of a match is the lowest row
+	 * of the bit array with a match at that position, read off as the match
+	 * is found, so no further passes are needed.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return an ArrayList<Match> containing the positions where a valid
+	 * substring match can start, in order, and the distance of each match
+	 */
+	public List<Match> wuManberMatches(CharSequence haystack, int lev) {
+		int length = haystack.length();
+		IntList locatedPositions = new IntList();
+		IntList locatedDistances = new IntList();
+		if (classes.length <= lev) {
+			// The empty substring at the end matches by deleting the needle
+			locatedPositions.add(length);
+			locatedDistances.add(classes.length);
+		}
+		if (classes.length > SINGLE_WORD_LIMIT) {
+			wideWuManber(haystack, 0, length, length, lev, false, locatedPositions, locatedDistances,
+					new long[scratchLength(lev)]);
+		} else {
+			narrowWuManber(haystack, 0, length, length, lev, false, locatedPositions, locatedDistances,
+					new long[scratchLength(lev)]);
+		}
+		
+		List<Match> locatedMatches = new ArrayList<Match>(locatedPositions.size());
+		for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+			locatedMatches.add(new Match(locatedPositions.get(p), locatedDistances.get(p)));
+		}
+		return locatedMatches;
+	}
+	
+	/**
+	 * Align the needle to the haystack at a match, as a CIGAR string. The
+	 * needle is the query and the haystack the reference: '=' marks a
+	 * matching character, 'X' a substitution, 'I' a needle character missing
+	 * from the haystack, and 'D' a haystack character missing from the
+	 * needle. For example, the needle "ATTA" aligned at the start of "ATCTA"
+	 * gives "2=1D2=".
+	 * 
+	 * The alignment is computed on demand by dynamic programming over the
+	 * needle-length + distance characters following the match, so it costs
+	 * nothing for matches whose alignment is never asked for.
+	 * 
+	 * @param haystack - the haystack the match was found in.
+	 * @param match - a match of the needle within the haystack.
+	 * @return the CIGAR string of an alignment with the match's distance
+	 */
+	public String alignment(CharSequence haystack, Match match) {
+		int start = match.getPosition();
+		int m = classes.length;
+		int n = (int) Math.min(haystack.length() - start, (long) m + match.getDistance());
 		
-		List<Integer> locatedPositions = new ArrayList<Integer>();
-		long[] bitArray = generateBitArray(lev);
-
-		for (int i = haystack.length() - 1; i >= 0; i--) {
-			long[] old = bitArray.clone();
-			bitArray[0] = (old[0] << 1) | alphabetMasks.get(haystack.charAt(i));
-			if (lev > 0) {
-				for (int k = 1; k <= lev; k++) {
-					long ins = old[k - 1];
-					long sub = ins << 1;
-					long del = bitArray[k - 1] << 1;
-					long match = (old[k] << 1) | alphabetMasks.get(haystack.charAt(i));
-					bitArray[k] = ins & del & sub & match;
+		// distances[i][j] is the distance between the first i characters of
+		// the needle and the first j characters following the match
+		int[][] distances = new int[m + 1][n + 1];
+		for (int i = 0; i <= m; i++) {
+			distances[i][0] = i;
+		}
+		for (int j = 0; j <= n; j++) {
+			distances[0][j] = j;
+		}
+		for (int i = 1; i <= m; i++) {
+			for (int j = 1; j <= n; j++) {
+				int sub = accepts(i - 1, haystack.charAt(start + j - 1)) ? 0 : 1;
+				distances[i][j] = Math.min(distances[i - 1][j - 1] + sub,
+						Math.min(distances[i - 1][j], distances[i][j - 1]) + 1);
+			}
+		}
+		
+		int end = 0;
+		for (int j = 1; j <= n; j++) {
+			if (distances[m][j] < distances[m][end]) {
+				end = j;
+			}
+		}
+		if (distances[m][end] > match.getDistance()) {
+			throw new IllegalArgumentException("No match within distance "
+					+ match.getDistance() + " at position " + start);
+		}
+		
+		// Trace back from the end, preferring diagonal moves
+		StringBuilder operations = new StringBuilder();
+		int i = m;
+		int j = end;
+		while (i > 0 || j > 0) {
+			if (i > 0 && j > 0) {
+				boolean same = accepts(i - 1, haystack.charAt(start + j - 1));
+				if (distances[i][j] == distances[i - 1][j - 1] + (same ? 0 : 1)) {
+					operations.append(same ? '=' : 'X');
+					i--;
+					j--;
+					continue;
+				}
+			}
+			if (i > 0 && distances[i][j] == distances[i - 1][j] + 1) {
+				operations.append('I');
+				i--;
+			} else {
+				operations.append('D');
+				j--;
+			}
+		}
+		
+		StringBuilder cigar = new StringBuilder();
+		for (int p = operations.length() - 1; p >= 0; ) {
+			char operation = operations.charAt(p);
+			int run = 0;
+			while (p >= 0 && operations.charAt(p) == operation) {
+				run++;
+				p--;
+			}
+			cigar.append(run).append(operation);
+		}
+		return cigar.toString();
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Finds the best matches of a needle within a
+	 * haystack: all positions where a match starts with the lowest
+	 * Levenshtein distance found anywhere in the haystack.
+	 * 
+	 * @return an ArrayList<Match> containing the positions of the best
+	 * matches, in order, each with the lowest distance
+	 */
+	public List<Match> bestMatches(CharSequence haystack) {
+		return bestMatches(haystack, classes.length);
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Finds the best matches of a needle within a
+	 * haystack, no further than a given Levenshtein distance: all positions
+	 * where a match starts with the lowest distance found anywhere in the
+	 * haystack.
+	 * 
+	 * The search starts with lev + 1 rows, and stops updating the rows for
+	 * distances above the best distance found so far. Each row only depends
+	 * on the rows for lower distances, so the remaining rows are unaffected,
+	 * and the search speeds up as better matches are found. Needles longer
+	 * than 63 characters are searched with Myers' algorithm instead, whose
+	 * cost does not depend on the distance. Only the positions of the best
+	 * distance so far are kept, so an unbounded search does not store a
+	 * match for every position of the haystack.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return an ArrayList<Match> containing the positions of the best
+	 * matches, in order, each with the lowest distance, or an empty list if
+	 * there is no match within the given distance
+	 */
+	public List<Match> bestMatches(CharSequence haystack, int lev) {
+		// Every position matches once all characters of the needle are deleted
+		int best = Math.min(lev, classes.length);
+		List<Match> locatedMatches = new ArrayList<Match>();
+		
+		IntList locatedPositions = new IntList();
+		if (classes.length <= best) {
+			// The empty substring at the end matches by deleting the needle
+			best = classes.length;
+			locatedPositions.add(haystack.length());
+		}
+		
+		if (classes.length > SINGLE_WORD_LIMIT) {
+			long[] pv = new long[blocks];
+			long[] mv = new long[blocks];
+			Arrays.fill(pv, ~0L);
+			int score = classes.length;
+			for (int i = haystack.length() - 1; i >= 0; i--) {
+				score += advance(matchVectors, symbols.code(haystack.charAt(i)) * blocks, pv, mv, 0);
+				if (score <= best) {
+					if (score < best) {
+						best = score;
+						locatedPositions.clear();
+					}
+					locatedPositions.add(i);
 				}
 			}
+			for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+				locatedMatches.add(new Match(locatedPositions.get(p), best));
+			}
+			return locatedMatches;
+		}
+		
+		long[] bitArray = generateBitArray(best);
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			long mask = alphabetMasks[symbols.code(haystack.charAt(i))];
+			long above = bitArray[0];
+			bitArray[0] = (above << 1) | mask;
+			for (int k = 1; k <= best; k++) {
+				long old = bitArray[k];
+				bitArray[k] = above & (above << 1) & (bitArray[k - 1] << 1) & ((old << 1) | mask);
+				above = old;
+			}
 			
-			if (0 == (bitArray[lev] & (1 << needle.length()))) {
+			if (0 == (bitArray[best] & matchBit)) {
+				int k = 0;
+				while (0 != (bitArray[k] & matchBit)) {
+					k++;
+				}
+				if (k < best) {
+					// Rows for distances above the new best are no longer needed
+					best = k;
+					locatedPositions.clear();
+				}
 				locatedPositions.add(i);
 			}
 		}
 		
-		Collections.sort(locatedPositions);
-		return locatedPositions;
+		for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+			locatedMatches.add(new Match(locatedPositions.get(p), best));
+		}
+		return locatedMatches;
 	}
-
+	
 	/**
 	 * Wu-Manber algorithm. Checks if any match (within a given Levenshtein
 	 * distance) of a needle exists within a haystack.
@@ -203,29 +808,1585 @@ public class Bitap {
 	 * @param lev - the maximum Levenshtein distance for a substring match
 	 * @return a boolean if the needle exists within the haystack
 	 */
-	public boolean within(String haystack, int lev) {
-		haystack = haystack + "&";
-		
-		long[] bitArray = generateBitArray(lev);
-
-		for (int i = haystack.length() - 1; i >= 0; i--) {
-			long[] old = bitArray.clone();
-			bitArray[0] = (old[0] << 1) | alphabetMasks.get(haystack.charAt(i));
-			if (lev > 0) {
-				for (int k = 1; k <= lev; k++) {
-					long ins = old[k - 1];
-					long sub = ins << 1;
-					long del = bitArray[k - 1] << 1;
-					long match = (old[k] << 1) | alphabetMasks.get(haystack.charAt(i));
-					bitArray[k] = ins & del & sub & match;
-				}
-			}
-			
-			if (0 == (bitArray[lev] & (1 << needle.length()))) {
-				return true;
+	public boolean within(CharSequence haystack, int lev) {
+		return within(haystack, lev, new long[scratchLength(lev)], new IntList());
+	}
+	
+	/**
+	 * Wu-Manber algorithm over a batch of haystacks. Checks, for each
+	 * haystack, if any match (within a given Levenshtein distance) of a
+	 * needle exists within it.
+	 * 
+	 * This is meant for many short haystacks, such as sequencing reads
+	 * checked against a single needle. A single bit array is allocated for
+	 * the whole batch and reset between haystacks, so no memory is allocated
+	 * per haystack.
+	 * 
+	 * @param haystacks - the haystacks to search
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return a BitSet with bit i set if the needle exists within haystack i
+	 */
+	public BitSet within(List<? extends CharSequence> haystacks, int lev) {
+		BitSet found = new BitSet(haystacks.size());
+		long[] bitArray = new long[scratchLength(lev)];
+		IntList locatedPositions = new IntList();
+		for (int i = 0; i < haystacks.size(); i++) {
+			if (within(haystacks.get(i), lev, bitArray, locatedPositions)) {
+				found.set(i);
 			}
 		}
-		
-		return false;
+		return found;
+	}
+	
+	/**
+	 * Wu-Manber algorithm over a batch of haystacks. Checks, for each
+	 * haystack, if any match (within a given Levenshtein distance) of a
+	 * needle exists within it.
+	 * 
+	 * @param haystacks - the haystacks to search
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return a BitSet with bit i set if the needle exists within haystack i
+	 */
+	public BitSet within(CharSequence[] haystacks, int lev) {
+		return within(Arrays.asList(haystacks), lev);
+	}
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm over many haystacks at once, such as short
+	 * reads against a single probe. Where the Vector API is available, a group
+	 * of haystacks is advanced together, one haystack per lane of a vector;
+	 * otherwise the haystacks are searched one at a time.
+	 * 
+	 * @param haystacks - the strings to search in.
+	 * @return the position of the first exact match of the needle within each
+	 * haystack, or -1 if there is none
+	 */
+	public int[] firstMatches(CharSequence[] haystacks) {
+		int[] positions = new int[haystacks.length];
+		if (classes.length == 0 || classes.length > SINGLE_WORD_LIMIT) {
+			IntList locatedPositions = new IntList();
+			for (int h = 0; h < haystacks.length; h++) {
+				locatedPositions.clear();
+				int length = haystacks[h].length();
+				search(haystacks[h], 0, length, length, 0, false, locatedPositions);
+				positions[h] = locatedPositions.isEmpty() ? -1
+						: locatedPositions.get(locatedPositions.size() - 1);
+			}
+			return positions;
+		}
+		LANES.firstMatches(haystacks, symbols, alphabetMasks, matchBit, positions);
+		return positions;
+	}
+	
+	/* Limited search implementation notes
+	 * 
+	 * A search with options splits the positions of the haystack into blocks,
+	 * and scans the blocks from first to last. As with parallel searches,
+	 * each block is scanned from a fresh bit array, starting needle-length +
+	 * lev characters past its last position. Since every match found in a
+	 * block lies before every match found in the next, the search can stop as
+	 * soon as enough matches have been found, without scanning the rest of
+	 * the haystack. The options are checked for a timeout or cancellation
+	 * before each block.
+	 */
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm with limits. Finds the first exact matches
+	 * of a needle within a haystack, up to the most matches allowed by the
+	 * options.
+	 * 
+	 * @param options - the limits on the search
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 * @throws CancellationException if the search times out or is cancelled
+	 */
+	public List<Integer> baezaYatesGonnet(CharSequence haystack, SearchOptions options) {
+		IntList locatedPositions = new IntList();
+		search(haystack, 0, options, locatedPositions);
+		return locatedPositions.toList();
+	}
+	
+	/**
+	 * Wu-Manber algorithm with limits. Finds the first approximate (within a
+	 * given Levenshtein distance) matches of a needle within a haystack, up
+	 * to the most matches allowed by the options.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param options - the limits on the search
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 * @throws CancellationException if the search times out or is cancelled
+	 */
+	public List<Integer> wuManber(CharSequence haystack, int lev, SearchOptions options) {
+		IntList locatedPositions = new IntList();
+		search(haystack, lev, options, locatedPositions);
+		return locatedPositions.toList();
+	}
+	
+	/**
+	 * Wu-Manber algorithm with limits. Counts the approximate (within a given
+	 * Levenshtein distance) matches of a needle within a haystack, without
+	 * keeping their positions. Counting stops at the most matches allowed by
+	 * the options.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param options - the limits on the search
+	 * @return the number of positions where a valid substring match can start
+	 * @throws CancellationException if the search times out or is cancelled
+	 */
+	public int count(CharSequence haystack, int lev, SearchOptions options) {
+		return search(haystack, lev, options, null);
+	}
+	
+	/**
+	 * Scan a haystack one block at a time, from first block to last, until
+	 * the most matches allowed by the options have been found.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param options - the limits on the search
+	 * @param locatedPositions - receives the positions of matches in
+	 * ascending order, or null to only count them
+	 * @return the number of matches found
+	 */
+	private int search(CharSequence haystack, int lev, SearchOptions options,
+			IntList locatedPositions) {
+		long start = System.nanoTime();
+		int maxHits = options.getMaxHits();
+		int length = haystack.length();
+		IntList blockPositions = new IntList();
+		int hits = 0;
+		
+		for (long from = 0; from <= length && hits < maxHits; from += OPTIONS_BLOCK_SIZE) {
+			if (options.isCancelled(start)) {
+				throw new CancellationException("Search cancelled after " + hits + " matches");
+			}
+			int limit = (int) Math.min(length, from + OPTIONS_BLOCK_SIZE - 1);
+			int to = (int) Math.min(length, (long) limit + classes.length + lev);
+			blockPositions.clear();
+			search(haystack, (int) from, to, limit, lev, false, blockPositions);
+			int found = Math.min(blockPositions.size(), maxHits - hits);
+			for (int p = 0; locatedPositions != null && p < found; p++) {
+				locatedPositions.add(blockPositions.get(blockPositions.size() - 1 - p));
+			}
+			hits += found;
+		}
+		return hits;
+	}
+	
+	/* Parallel implementation notes
+	 * 
+	 * A parallel search splits the positions of the haystack into pieces,
+	 * which are scanned independently on a fork/join pool. As with streams,
+	 * each piece is scanned from a fresh bit array, starting
+	 * needle-length + lev characters past its last position so that every
+	 * match starting within the piece is complete. Only matches starting
+	 * within the piece are kept, so the pieces never report the same
+	 * position twice, and concatenating their results in order gives the
+	 * same positions as a sequential search.
+	 */
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm, run in parallel on the given pool.
+	 * 
+	 * @param pool - the pool to run the search on.
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 */
+	public List<Integer> baezaYatesGonnet(CharSequence haystack, ForkJoinPool pool) {
+		return pool.invoke(new ParallelSearch(haystack, 0, haystack.length() + 1, 0)).toReversedList();
+	}
+	
+	/**
+	 * Wu-Manber algorithm, run in parallel on the given pool.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param pool - the pool to run the search on.
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 */
+	public List<Integer> wuManber(CharSequence haystack, int lev, ForkJoinPool pool) {
+		return pool.invoke(new ParallelSearch(haystack, 0, haystack.length() + 1, lev)).toReversedList();
+	}
+	
+	/**
+	 * Wu-Manber algorithm, run in parallel on the given pool. Passes the
+	 * positions of all matches to the consumer, in ascending order, without
+	 * boxing them.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param pool - the pool to run the search on.
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void wuManber(CharSequence haystack, int lev, ForkJoinPool pool, IntConsumer consumer) {
+		pool.invoke(new ParallelSearch(haystack, 0, haystack.length() + 1, lev)).forEachReversed(consumer);
+	}
+	
+	/**
+	 * Searches for matches starting at the positions [from, until) of a
+	 * haystack, splitting the positions in half until there are few enough
+	 * to scan directly.
+	 */
+	private final class ParallelSearch extends RecursiveTask<IntList> {
+		private static final long serialVersionUID = 1L;
+		
+		private final CharSequence haystack;
+		private final int from;
+		private final int until;
+		private final int lev;
+		
+		ParallelSearch(CharSequence haystack, int from, int until, int lev) {
+			this.haystack = haystack;
+			this.from = from;
+			this.until = until;
+			this.lev = lev;
+		}
+		
+		@Override
+		protected IntList compute() {
+			if (until - from <= PARALLEL_THRESHOLD) {
+				int to = (int) Math.min(haystack.length(), (long) until - 1 + classes.length + lev);
+				IntList locatedPositions = new IntList();
+				search(haystack, from, to, until - 1, lev, false, locatedPositions);
+				return locatedPositions;
+			}
+			int middle = (from + until) >>> 1;
+			ParallelSearch left = new ParallelSearch(haystack, from, middle, lev);
+			ParallelSearch right = new ParallelSearch(haystack, middle, until, lev);
+			left.fork();
+			IntList locatedPositions = right.compute();
+			locatedPositions.addAll(left.join());
+			return locatedPositions;
+		}
+	}
+	
+	/* Streaming implementation notes
+	 * 
+	 * Since the haystack is scanned from end to start, the bit array cannot
+	 * simply be carried from one buffer of a stream to the next. Instead,
+	 * each buffer is scanned on its own, starting from the fresh bit array
+	 * as if the buffer were the end of the haystack. A match starting at
+	 * position i spans at most needle-length + lev characters, so the scan
+	 * finds every match starting at least that far from the end of the
+	 * buffer. Matches starting closer to the end are left for the next
+	 * buffer, which begins with those last needle-length + lev characters
+	 * carried over. Memory is bounded by the buffer size, no matter how long
+	 * the stream.
+	 */
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm over a stream of characters. Passes the
+	 * positions of all exact matches of the needle to the consumer, in
+	 * ascending order, as the stream is read. The reader is not closed.
+	 * 
+	 * @param haystack - the stream to search in.
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void baezaYatesGonnet(Reader haystack, LongConsumer consumer) throws IOException {
+		stream(haystack, 0, consumer);
+	}
+	
+	/**
+	 * Wu-Manber algorithm over a stream of characters. Passes the positions
+	 * of all approximate (within a given Levenshtein distance) matches of the
+	 * needle to the consumer, in ascending order, as the stream is read. The
+	 * reader is not closed.
+	 * 
+	 * @param haystack - the stream to search in.
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void wuManber(Reader haystack, int lev, LongConsumer consumer) throws IOException {
+		stream(haystack, lev, consumer);
+	}
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm over a channel of bytes, decoded with the
+	 * given charset. Positions count decoded characters. The channel is not
+	 * closed.
+	 * 
+	 * @param haystack - the channel to search in.
+	 * @param charset - the encoding of the channel's bytes.
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void baezaYatesGonnet(ReadableByteChannel haystack, Charset charset,
+			LongConsumer consumer) throws IOException {
+		stream(Channels.newReader(haystack, charset.newDecoder(), -1), 0, consumer);
+	}
+	
+	/**
+	 * Wu-Manber algorithm over a channel of bytes, decoded with the given
+	 * charset. Positions count decoded characters. The channel is not closed.
+	 * 
+	 * @param haystack - the channel to search in.
+	 * @param charset - the encoding of the channel's bytes.
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void wuManber(ReadableByteChannel haystack, Charset charset, int lev,
+			LongConsumer consumer) throws IOException {
+		stream(Channels.newReader(haystack, charset.newDecoder(), -1), lev, consumer);
+	}
+	
+	/**
+	 * Scan a stream one buffer at a time, carrying the last
+	 * needle-length + lev characters of each buffer over to the next. At
+	 * least one character is carried, as the empty needle at lev 0 also
+	 * matches at the end of the buffer, which is only reported once the
+	 * next buffer has been read.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	private void stream(Reader reader, int lev, LongConsumer consumer) throws IOException {
+		int overlap = Math.max(1, classes.length + lev);
+		char[] buffer = new char[Math.max(STREAM_BUFFER_SIZE, 2 * overlap)];
+		CharSequence view = CharBuffer.wrap(buffer);
+		IntList locatedPositions = new IntList();
+		long offset = 0;
+		int length = 0;
+		boolean end = false;
+		
+		while (!end) {
+			while (length < buffer.length) {
+				int read = reader.read(buffer, length, buffer.length - length);
+				if (read < 0) {
+					end = true;
+					break;
+				}
+				length += read;
+			}
+			
+			int limit = end ? length : length - overlap;
+			locatedPositions.clear();
+			search(view, 0, length, limit, lev, false, locatedPositions);
+			for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+				consumer.accept(offset + locatedPositions.get(p));
+			}
+			
+			if (!end) {
+				length -= limit + 1;
+				System.arraycopy(buffer, limit + 1, buffer, 0, length);
+				offset += limit + 1;
+			}
+		}
+	}
+	
+	/* Memory-mapped implementation notes
+	 * 
+	 * Files are mapped into memory and scanned in place, without decoding
+	 * them into a String first. Each byte is read as the character with the
+	 * same value (ISO-8859-1), and translated to a symbol code through a
+	 * table of all 256 byte values. Positions are byte offsets into the file.
+	 * A single mapping cannot exceed 2 GB, so larger files are mapped a piece
+	 * at a time, carrying needle-length + lev bytes over from one piece to the
+	 * next, exactly as for streams.
+	 */
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm over a memory-mapped file. Passes the byte
+	 * offsets of all exact matches of the needle to the consumer, in
+	 * ascending order.
+	 * 
+	 * @param haystack - the file to search in.
+	 * @param consumer - receives the offsets where a valid substring match
+	 * can start
+	 */
+	public void baezaYatesGonnet(Path haystack, LongConsumer consumer) throws IOException {
+		map(haystack, 0, consumer);
+	}
+	
+	/**
+	 * Wu-Manber algorithm over a memory-mapped file. Passes the byte offsets
+	 * of all approximate (within a given Levenshtein distance) matches of the
+	 * needle to the consumer, in ascending order.
+	 * 
+	 * @param haystack - the file to search in.
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the offsets where a valid substring match
+	 * can start
+	 */
+	public void wuManber(Path haystack, int lev, LongConsumer consumer) throws IOException {
+		map(haystack, lev, consumer);
+	}
+	
+	/**
+	 * Scan a file one mapping at a time, carrying the last
+	 * needle-length + lev bytes of each mapping over to the next.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the offsets where a valid substring match
+	 * can start
+	 */
+	private void map(Path file, int lev, LongConsumer consumer) throws IOException {
+		int overlap = classes.length + lev;
+		int mapSize = Math.max(MAP_SIZE, 2 * overlap);
+		int[] byteCodes = generateByteCodes();
+		IntList locatedPositions = new IntList();
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long offset = 0;
+			boolean end = false;
+			
+			while (!end) {
+				int length = (int) Math.min(size - offset, mapSize);
+				end = offset + length == size;
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				
+				int limit = end ? length : length - overlap;
+				locatedPositions.clear();
+				search(buffer, byteCodes, length, limit, lev, locatedPositions);
+				for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+					consumer.accept(offset + locatedPositions.get(p));
+				}
+				offset += limit + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Build the table translating each byte value to a symbol code, reading
+	 * the byte as an ISO-8859-1 character. Bytes outside the alphabet are
+	 * given the code -1 if unknown characters are rejected, so that they can
+	 * be rejected as they are met rather than here.
+	 */
+	private int[] generateByteCodes() {
+		int[] table = new int[1 << Byte.SIZE];
+		for (int b = 0; b < table.length; b++) {
+			int code = symbols.find((char) b);
+			table[b] = code >= 0 || unknown == UnknownCharacters.REJECT ? code : symbols.size();
+		}
+		return table;
+	}
+	
+	/**
+	 * Scan the bytes [0, to) of a buffer from end to start, as if the
+	 * haystack ended at to. Positions of matches in [0, limit] are added to
+	 * locatedPositions in descending order. Needles longer than 63 characters
+	 * are searched through an ISO-8859-1 view of the buffer instead.
+	 * 
+	 * @param byteCodes - the symbol code of each byte value
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 */
+	private void search(ByteBuffer haystack, int[] byteCodes, int to, int limit, int lev,
+			IntList locatedPositions) {
+		if (classes.length > SINGLE_WORD_LIMIT) {
+			search(new Latin1Sequence(haystack), 0, to, limit, lev, false, locatedPositions);
+			return;
+		}
+		if (classes.length <= lev && to <= limit) {
+			// The empty substring at the end matches by deleting the needle
+			locatedPositions.add(to);
+		}
+		long[] bitArray = generateBitArray(lev);
+		
+		for (int i = to - 1; i >= 0; i--) {
+			int code = byteCodes[haystack.get(i) & 0xFF];
+			if (code < 0) {
+				code = symbols.code((char) (haystack.get(i) & 0xFF));
+			}
+			long mask = alphabetMasks[code];
+			long above = bitArray[0];
+			bitArray[0] = (above << 1) | mask;
+			for (int k = 1; k <= lev; k++) {
+				long old = bitArray[k];
+				long ins = above;
+				long sub = above << 1;
+				long del = bitArray[k - 1] << 1;
+				long match = (old << 1) | mask;
+				bitArray[k] = ins & del & sub & match;
+				above = old;
+			}
+			
+			if (0 == (bitArray[lev] & matchBit) && i <= limit) {
+				locatedPositions.add(i);
+			}
+		}
+	}
+	
+	/**
+	 * A view of a buffer of bytes as ISO-8859-1 characters.
+	 */
+	private static final class Latin1Sequence implements CharSequence {
+		private final ByteBuffer bytes;
+		
+		Latin1Sequence(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+		
+		@Override
+		public int length() {
+			return bytes.limit();
+		}
+		
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes.get(index) & 0xFF);
+		}
+		
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			ByteBuffer slice = bytes.duplicate();
+			slice.position(start);
+			slice.limit(end);
+			return new Latin1Sequence(slice.slice());
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(length());
+			for (int i = 0; i < length(); i++) {
+				sb.append(charAt(i));
+			}
+			return sb.toString();
+		}
+	}
+	
+	/**
+	 * Scan the haystack from end to start, over the characters in
+	 * [from, to), as if the haystack ended at to. Positions of matches
+	 * in [from, limit] are added to locatedPositions in descending order.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param first - whether to stop after the first match found
+	 */
+	void search(CharSequence haystack, int from, int to, int limit, int lev,
+			boolean first, IntList locatedPositions) {
+		search(haystack, from, to, limit, lev, first, locatedPositions, new long[scratchLength(lev)]);
+	}
+	
+	/**
+	 * Scan the haystack as search() does, keeping the bit array in the given
+	 * scratch space, so that repeated searches allocate nothing.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param first - whether to stop after the first match found
+	 * @param scratch - scratch space for the bit array, of length at least
+	 * scratchLength(lev)
+	 */
+	void search(CharSequence haystack, int from, int to, int limit, int lev,
+			boolean first, IntList locatedPositions, long[] scratch) {
+		if (classes.length <= lev && to <= limit) {
+			// The empty substring at the end matches by deleting the needle
+			locatedPositions.add(to);
+			if (first) {
+				return;
+			}
+		}
+		if (haystack instanceof PackedDna && classes.length <= SINGLE_WORD_LIMIT) {
+			PackedDna packed = (PackedDna) haystack;
+			long[] masks = packed.ambiguous() == null ? baseMasks : ambiguousBaseMasks;
+			if (masks != null) {
+				packedWuManber(packed, masks, from, to, limit, lev, first, locatedPositions, scratch);
+				return;
+			}
+		}
+		if (classes.length > SINGLE_WORD_LIMIT) {
+			if (lev == 0) {
+				wideBaezaYatesGonnet(haystack, from, to, limit, first, locatedPositions, scratch);
+			} else {
+				wideWuManber(haystack, from, to, limit, lev, first, locatedPositions, null, scratch);
+			}
+		} else {
+			if (lev == 0) {
+				narrowBaezaYatesGonnet(haystack, from, to, limit, first, locatedPositions);
+			} else {
+				narrowWuManber(haystack, from, to, limit, lev, first, locatedPositions, null, scratch);
+			}
+		}
+	}
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm for needles of at most 63 characters.
+	 * 
+	 * @param first - whether to stop after the first match found
+	 */
+	private void narrowBaezaYatesGonnet(CharSequence haystack, int from, int to, int limit,
+			boolean first, IntList locatedPositions) {
+		long bitArray = ~1;
+		
+		for (int i = to - 1; i >= from; i--) {
+			bitArray = (bitArray << 1) | alphabetMasks[symbols.code(haystack.charAt(i))];
+			if (0 == (bitArray & matchBit) && i <= limit) {
+				locatedPositions.add(i);
+				if (first) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Wu-Manber algorithm for needles of at most 63 characters.
+	 * 
+	 * Each row of the bit array is updated in place. Row k depends on the
+	 * previous value of rows k - 1 and k, and the new value of row k - 1, so
+	 * the rows are updated from the top down, holding on to the previous
+	 * value of the row above in a local. The alphabet mask of the current
+	 * character is looked up once, outside of the loop over rows. No memory
+	 * is allocated per character of the haystack.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param first - whether to stop after the first match found
+	 * @param locatedDistances - receives the distance of each match, or null
+	 * @param bitArray - scratch space for the bit array, of length at least
+	 * lev + 1
+	 */
+	private void narrowWuManber(CharSequence haystack, int from, int to, int limit, int lev,
+			boolean first, IntList locatedPositions, IntList locatedDistances, long[] bitArray) {
+		resetBitArray(bitArray);
+		
+		for (int i = to - 1; i >= from; i--) {
+			long mask = alphabetMasks[symbols.code(haystack.charAt(i))];
+			long above = bitArray[0];
+			bitArray[0] = (above << 1) | mask;
+			for (int k = 1; k <= lev; k++) {
+				long old = bitArray[k];
+				long ins = above;
+				long sub = above << 1;
+				long del = bitArray[k - 1] << 1;
+				long match = (old << 1) | mask;
+				bitArray[k] = ins & del & sub & match;
+				above = old;
+			}
+			
+			if (0 == (bitArray[lev] & matchBit) && i <= limit) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					// The lowest row with a match is the distance of the match
+					int k = 0;
+					while (0 != (bitArray[k] & matchBit)) {
+						k++;
+					}
+					locatedDistances.add(k);
+				}
+				if (first) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Check if any match of the needle exists within a haystack, reusing the
+	 * given scratch space.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param bitArray - scratch space for the bit array, of length at least
+	 * scratchLength(lev)
+	 * @param locatedPositions - scratch space for the position of the match
+	 * @return a boolean if the needle exists within the haystack
+	 */
+	boolean within(CharSequence haystack, int lev, long[] bitArray, IntList locatedPositions) {
+		if (classes.length <= SINGLE_WORD_LIMIT && !(haystack instanceof PackedDna)) {
+			return narrowWithin(haystack, lev, bitArray);
+		}
+		locatedPositions.clear();
+		search(haystack, 0, haystack.length(), haystack.length(), lev, true, locatedPositions,
+				bitArray);
+		return !locatedPositions.isEmpty();
+	}
+	
+	/**
+	 * Wu-Manber algorithm for needles of at most 63 characters, stopping at
+	 * the first match. Unlike the other implementations, no positions are
+	 * recorded, and the bit array is supplied by the caller so that it can
+	 * be reused.
+	 * 
+	 * @param bitArray - scratch space for the bit array, of length at least
+	 * lev + 1
+	 * @return a boolean if the needle exists within the haystack
+	 */
+	private boolean narrowWithin(CharSequence haystack, int lev, long[] bitArray) {
+		if (classes.length <= lev) {
+			return true;
+		}
+		resetBitArray(bitArray);
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			long mask = alphabetMasks[symbols.code(haystack.charAt(i))];
+			long above = bitArray[0];
+			bitArray[0] = (above << 1) | mask;
+			for (int k = 1; k <= lev; k++) {
+				long old = bitArray[k];
+				bitArray[k] = above & (above << 1) & (bitArray[k - 1] << 1) & ((old << 1) | mask);
+				above = old;
+			}
+			
+			if (0 == (bitArray[lev] & matchBit)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/* Packed DNA implementation notes
+	 * 
+	 * A PackedDna haystack holds 32 bases per long, coded 0 to 3 as A, C, G
+	 * and T. Rather than decoding each base into a character and looking up
+	 * its symbol code, the scan loads a long of bases at a time and indexes a
+	 * table of the four alphabet masks of A, C, G and T directly by the
+	 * two-bit code. Ambiguous bases take a fifth mask: that of 'N' if it is in
+	 * the alphabet, or else the mask of unknown characters.
+	 */
+	
+	/**
+	 * The alphabet masks of A, C, G, T and N, in that order, for scanning a
+	 * packed haystack. Only the first count bases are looked up: four for a
+	 * haystack without ambiguous bases, or all five. Returns null if a base is
+	 * outside the alphabet and unknown characters are rejected, in which case
+	 * the haystack must be searched a character at a time so that the base is
+	 * rejected if met.
+	 */
+	private long[] generateBaseMasks(int count) {
+		String bases = "ACGTN";
+		long[] masks = new long[5];
+		for (int b = 0; b < count; b++) {
+			int code = symbols.find(bases.charAt(b));
+			if (code < 0) {
+				if (unknown == UnknownCharacters.REJECT) {
+					return null;
+				}
+				code = symbols.size();
+			}
+			masks[b] = alphabetMasks[code];
+		}
+		return masks;
+	}
+	
+	/**
+	 * Wu-Manber algorithm for needles of at most 63 characters over a packed
+	 * haystack, with the same contract as search(). The rows are updated as
+	 * in narrowWuManber(); only the way of finding each base's mask differs.
+	 * 
+	 * @param baseMasks - the alphabet masks of A, C, G, T and N
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param first - whether to stop after the first match found
+	 * @param bitArray - scratch space for the bit array, of length at least
+	 * lev + 1
+	 */
+	private void packedWuManber(PackedDna haystack, long[] baseMasks, int from, int to, int limit,
+			int lev, boolean first, IntList locatedPositions, long[] bitArray) {
+		long[] bases = haystack.bases();
+		long[] ambiguous = haystack.ambiguous();
+		resetBitArray(bitArray);
+		
+		int i = to - 1;
+		while (i >= from) {
+			// The 32 bases sharing a long with base i, and their ambiguity bits
+			long word = bases[i >>> 5];
+			long unknownBases = ambiguous == null ? 0 : ambiguous[i >>> 6] >>> (i & 32);
+			int start = Math.max(from, i & ~31);
+			
+			for (; i >= start; i--) {
+				int j = i & 31;
+				long mask = 0 != ((unknownBases >>> j) & 1) ? baseMasks[4]
+						: baseMasks[(int) (word >>> (j << 1)) & 3];
+				long above = bitArray[0];
+				bitArray[0] = (above << 1) | mask;
+				for (int k = 1; k <= lev; k++) {
+					long old = bitArray[k];
+					bitArray[k] = above & (above << 1) & (bitArray[k - 1] << 1) & ((old << 1) | mask);
+					above = old;
+				}
+				
+				if (0 == (bitArray[lev] & matchBit) && i <= limit) {
+					locatedPositions.add(i);
+					if (first) {
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	/* Multi-word implementation notes
+	 * 
+	 * A needle of length m needs m + 1 bits per row: one per character plus
+	 * the right-most zero column. Past 63 characters a row no longer fits in
+	 * a long, so each row is split over several longs, least significant
+	 * first. The recurrences are unchanged, except that every left-shift
+	 * must carry the top bit of each long into the bottom bit of the next.
+	 */
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm for needles longer than 63 characters.
+	 * 
+	 * @param first - whether to stop after the first match found
+	 * @param bitArray - scratch space for the bit array, of length at least
+	 * words
+	 */
+	private void wideBaezaYatesGonnet(CharSequence haystack, int from, int to, int limit,
+			boolean first, IntList locatedPositions, long[] bitArray) {
+		resetWideBitArray(bitArray, 0);
+		int last = words - 1;
+		
+		for (int i = to - 1; i >= from; i--) {
+			int mask = symbols.code(haystack.charAt(i)) * words;
+			long carry = 0;
+			for (int w = 0; w < words; w++) {
+				long word = bitArray[w];
+				bitArray[w] = (word << 1) | carry | alphabetMasks[mask + w];
+				carry = word >>> 63;
+			}
+			if (0 == (bitArray[last] & matchBit) && i <= limit) {
+				locatedPositions.add(i);
+				if (first) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Wu-Manber algorithm for needles longer than 63 characters. As in the
+	 * single-word case, rows are updated in place from the top down. The
+	 * previous values of the row above and of the current row are kept in
+	 * two scratch rows past the end of the bit array, which swap roles as the
+	 * update moves down.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param first - whether to stop after the first match found
+	 * @param locatedDistances - receives the distance of each match, or null
+	 * @param bitArray - scratch space for the bit array and the two scratch
+	 * rows, of length at least scratchLength(lev)
+	 */
+	private void wideWuManber(CharSequence haystack, int from, int to, int limit, int lev,
+			boolean first, IntList locatedPositions, IntList locatedDistances, long[] bitArray) {
+		resetWideBitArray(bitArray, lev);
+		int above = (lev + 1) * words;
+		int old = above + words;
+		int last = lev * words + words - 1;
+		
+		for (int i = to - 1; i >= from; i--) {
+			int mask = symbols.code(haystack.charAt(i)) * words;
+			long carry = 0;
+			for (int w = 0; w < words; w++) {
+				bitArray[above + w] = bitArray[w];
+				bitArray[w] = (bitArray[above + w] << 1) | carry | alphabetMasks[mask + w];
+				carry = bitArray[above + w] >>> 63;
+			}
+			for (int k = 1; k <= lev; k++) {
+				int row = k * words;
+				int upper = row - words;
+				long subCarry = 0;
+				long delCarry = 0;
+				long matchCarry = 0;
+				for (int w = 0; w < words; w++) {
+					long previous = bitArray[row + w];
+					bitArray[old + w] = previous;
+					long ins = bitArray[above + w];
+					long sub = (ins << 1) | subCarry;
+					long del = (bitArray[upper + w] << 1) | delCarry;
+					long match = (previous << 1) | matchCarry | alphabetMasks[mask + w];
+					subCarry = ins >>> 63;
+					delCarry = bitArray[upper + w] >>> 63;
+					matchCarry = previous >>> 63;
+					bitArray[row + w] = ins & del & sub & match;
+				}
+				int swap = above;
+				above = old;
+				old = swap;
+			}
+			
+			if (0 == (bitArray[last] & matchBit) && i <= limit) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					int k = 0;
+					while (0 != (bitArray[k * words + words - 1] & matchBit)) {
+						k++;
+					}
+					locatedDistances.add(k);
+				}
+				if (first) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/* Hamming implementation notes
+	 * 
+	 * With substitutions as the only edit, a match is exactly as long as the
+	 * needle, and row k of the bit array depends only on the previous values
+	 * of rows k and k - 1:
+	 * 
+	 *  R[k] = ((R[k] << 1) | mask) & (R[k - 1] << 1)
+	 * 
+	 * the first term extending a match with the current character, the second
+	 * substituting it. This drops the insertion and deletion terms of
+	 * Wu-Manber, and with them the need for the new value of the row above,
+	 * so the rows may be updated in any order. Every row starts with only
+	 * its right-most column zero, as no part of the needle can be deleted
+	 * past the end of the haystack.
+	 * 
+	 * Short needles instead use the shift-add algorithm of Baeza-Yates and
+	 * Gonnet, which counts mismatches rather than keeping a row per count.
+	 * The state holds one field of B bits per needle position, field j
+	 * counting the mismatches of the needle's last j characters against the
+	 * haystack from the current position. A single shift-add advances every
+	 * field at once:
+	 * 
+	 *  state = (state << B) + T[c]
+	 * 
+	 * where T[c] has a one in each field whose needle position does not
+	 * accept c. The top bit of each field flags a count above the maximum,
+	 * and is moved into a separate overflow word after every step so that it
+	 * never carries into the next field. Each field starts from a bias of
+	 * 2^(B-1) - 1 - k, so it overflows exactly when its count exceeds k.
+	 * Work per character is then constant, rather than one update per row,
+	 * whenever m * B fits in a long, with B = floor(log2(k)) + 2.
+	 */
+	
+	/**
+	 * Finds all matches of a needle within a haystack, allowing up to a given
+	 * number of substituted characters but no insertions or deletions.
+	 * 
+	 * @param mismatches - the maximum Hamming distance for a substring match
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 */
+	public List<Integer> hamming(CharSequence haystack, int mismatches) {
+		IntList locatedPositions = new IntList();
+		hamming(haystack, mismatches, locatedPositions, null);
+		return locatedPositions.toReversedList();
+	}
+	
+	/**
+	 * Finds all matches of a needle within a haystack, allowing up to a given
+	 * number of substituted characters but no insertions or deletions, along
+	 * with the Hamming distance of each.
+	 * 
+	 * @param mismatches - the maximum Hamming distance for a substring match
+	 * @return an ArrayList<Match> containing the positions where a valid
+	 * substring match can start, in order, and the distance of each match
+	 */
+	public List<Match> hammingMatches(CharSequence haystack, int mismatches) {
+		IntList locatedPositions = new IntList();
+		IntList locatedDistances = new IntList();
+		hamming(haystack, mismatches, locatedPositions, locatedDistances);
+		
+		List<Match> locatedMatches = new ArrayList<Match>(locatedPositions.size());
+		for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+			locatedMatches.add(new Match(locatedPositions.get(p), locatedDistances.get(p)));
+		}
+		return locatedMatches;
+	}
+	
+	/**
+	 * Scan the haystack from end to start for matches within the Hamming
+	 * distance. Positions are added in descending order.
+	 * 
+	 * @param locatedDistances - receives the distance of each match, or null
+	 */
+	private void hamming(CharSequence haystack, int mismatches, IntList locatedPositions,
+			IntList locatedDistances) {
+		if (mismatches < 0) {
+			throw new IllegalArgumentException("Mismatches must not be negative: " + mismatches);
+		}
+		if (classes.length == 0) {
+			// The empty needle matches the empty substring at the end
+			locatedPositions.add(haystack.length());
+			if (locatedDistances != null) {
+				locatedDistances.add(0);
+			}
+		}
+		if (classes.length > 0 && classes.length <= SINGLE_WORD_LIMIT
+				&& classes.length * fieldWidth(mismatches) <= Long.SIZE) {
+			shiftAddHamming(haystack, mismatches, locatedPositions, locatedDistances);
+		} else if (classes.length > SINGLE_WORD_LIMIT) {
+			wideHamming(haystack, mismatches, locatedPositions, locatedDistances);
+		} else {
+			narrowHamming(haystack, mismatches, locatedPositions, locatedDistances);
+		}
+	}
+	
+	/**
+	 * @return the number of bits per field of the shift-add algorithm: enough
+	 * to count to the maximum Hamming distance, plus the overflow bit
+	 */
+	private static int fieldWidth(int mismatches) {
+		return Long.SIZE - Long.numberOfLeadingZeros(mismatches) + 1;
+	}
+	
+	/**
+	 * Shift-add Hamming search for needles of at most 63 characters whose
+	 * fields fit in a long.
+	 * 
+	 * @param locatedDistances - receives the distance of each match, or null
+	 */
+	private void shiftAddHamming(CharSequence haystack, int mismatches, IntList locatedPositions,
+			IntList locatedDistances) {
+		int m = classes.length;
+		int width = fieldWidth(mismatches);
+		long bias = (1L << (width - 1)) - 1 - mismatches;
+		long high = 0;
+		for (int j = 0; j < m; j++) {
+			high |= 1L << (j * width + width - 1);
+		}
+		
+		// The mismatches of each symbol, read off the alphabet masks, whose
+		// bit j is set where position j of the reversed needle rejects it
+		long[] counters = new long[symbols.size() + 1];
+		for (int code = 0; code <= symbols.size(); code++) {
+			for (int j = 1; j <= m; j++) {
+				if (0 != (alphabetMasks[code] & (1L << j))) {
+					counters[code] |= 1L << ((j - 1) * width);
+				}
+			}
+			counters[code] += bias;
+		}
+		
+		int last = (m - 1) * width;
+		long lastHigh = 1L << (last + width - 1);
+		long count = (1L << (width - 1)) - 1;
+		long state = 0;
+		// Past the end of the haystack, no field holds a match
+		long overflow = high;
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			state = (state << width) + counters[symbols.code(haystack.charAt(i))];
+			overflow = (overflow << width) | (state & high);
+			state &= ~high;
+			
+			if (0 == (overflow & lastHigh)) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					locatedDistances.add((int) (((state >>> last) & count) - bias));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Hamming search for needles of at most 63 characters. Each row is
+	 * updated in place, holding on to the previous value of the row above in
+	 * a local.
+	 * 
+	 * @param locatedDistances - receives the distance of each match, or null
+	 */
+	private void narrowHamming(CharSequence haystack, int mismatches, IntList locatedPositions,
+			IntList locatedDistances) {
+		long[] bitArray = new long[mismatches + 1];
+		Arrays.fill(bitArray, ~1L);
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			long mask = alphabetMasks[symbols.code(haystack.charAt(i))];
+			long above = bitArray[0];
+			bitArray[0] = (above << 1) | mask;
+			for (int k = 1; k <= mismatches; k++) {
+				long old = bitArray[k];
+				bitArray[k] = ((old << 1) | mask) & (above << 1);
+				above = old;
+			}
+			
+			if (0 == (bitArray[mismatches] & matchBit)) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					int k = 0;
+					while (0 != (bitArray[k] & matchBit)) {
+						k++;
+					}
+					locatedDistances.add(k);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Hamming search for needles longer than 63 characters. The previous
+	 * value of the row above is kept in a scratch row, as in wideWuManber().
+	 * 
+	 * @param locatedDistances - receives the distance of each match, or null
+	 */
+	private void wideHamming(CharSequence haystack, int mismatches, IntList locatedPositions,
+			IntList locatedDistances) {
+		long[] bitArray = new long[(mismatches + 1) * words];
+		Arrays.fill(bitArray, ~0L);
+		for (int k = 0; k <= mismatches; k++) {
+			bitArray[k * words] = ~1L;
+		}
+		long[] above = new long[words];
+		long[] old = new long[words];
+		int last = mismatches * words + words - 1;
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			int mask = symbols.code(haystack.charAt(i)) * words;
+			long carry = 0;
+			for (int w = 0; w < words; w++) {
+				above[w] = bitArray[w];
+				bitArray[w] = (above[w] << 1) | carry | alphabetMasks[mask + w];
+				carry = above[w] >>> 63;
+			}
+			for (int k = 1; k <= mismatches; k++) {
+				int row = k * words;
+				long subCarry = 0;
+				long matchCarry = 0;
+				for (int w = 0; w < words; w++) {
+					old[w] = bitArray[row + w];
+					long sub = (above[w] << 1) | subCarry;
+					long match = (old[w] << 1) | matchCarry | alphabetMasks[mask + w];
+					subCarry = above[w] >>> 63;
+					matchCarry = old[w] >>> 63;
+					bitArray[row + w] = sub & match;
+				}
+				long[] swap = above;
+				above = old;
+				old = swap;
+			}
+			
+			if (0 == (bitArray[last] & matchBit)) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					int k = 0;
+					while (0 != (bitArray[k * words + words - 1] & matchBit)) {
+						k++;
+					}
+					locatedDistances.add(k);
+				}
+			}
+		}
+	}
+	
+	/* Weighted Wu-Manber implementation notes
+	 * 
+	 * With edits of differing integer costs, row c of the bit array marks
+	 * the needle prefixes (of the reversed needle) matching within a cost of
+	 * c, rather than within c edits. Each edit then reaches back as many
+	 * rows as it costs:
+	 * 
+	 *  R[c] = ((R[c] << 1) | mask)          extend with the current character
+	 *       & (R[c - sub] << 1)             substitute it
+	 *       & R[c - del]                    delete it (CIGAR 'D')
+	 *       & (R'[c - ins] << 1)            insert a needle character ('I')
+	 * 
+	 * where R' is the new value of a row and R the previous one, and a term
+	 * reaching above row 0 is dropped. Insertions and deletions are named as
+	 * in alignment() and EditCosts: a deletion skips a haystack character, an
+	 * insertion a needle character. With unit costs this is the usual
+	 * Wu-Manber update. The rows are updated from the top down, reading the
+	 * previous values from a copy of the bit array taken before the update.
+	 * 
+	 * Past the end of the haystack, j needle characters can only be
+	 * inserted, so row c starts with its floor(c / ins) + 1 right-most
+	 * columns zero.
+	 */
+	
+	/**
+	 * Wu-Manber algorithm with weighted edits. Finds all approximate matches
+	 * of a needle within a haystack whose edits cost at most a given total.
+	 * 
+	 * @param maxCost - the maximum total cost of the edits of a match
+	 * @param costs - the cost of each kind of edit
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 */
+	public List<Integer> wuManber(CharSequence haystack, int maxCost, EditCosts costs) {
+		if (costs.equals(EditCosts.UNIT)) {
+			return wuManber(haystack, maxCost);
+		}
+		IntList locatedPositions = new IntList();
+		weightedWuManber(haystack, maxCost, costs, locatedPositions, null);
+		return locatedPositions.toReversedList();
+	}
+	
+	/**
+	 * Wu-Manber algorithm with weighted edits. Finds all approximate matches
+	 * of a needle within a haystack whose edits cost at most a given total,
+	 * along with the cost of each. The distance of each Match is the lowest
+	 * total cost of the edits of a substring starting at that position.
+	 * 
+	 * @param maxCost - the maximum total cost of the edits of a match
+	 * @param costs - the cost of each kind of edit
+	 * @return an ArrayList<Match> containing the positions where a valid
+	 * substring match can start, in order, and the cost of each match
+	 */
+	public List<Match> wuManberMatches(CharSequence haystack, int maxCost, EditCosts costs) {
+		if (costs.equals(EditCosts.UNIT)) {
+			return wuManberMatches(haystack, maxCost);
+		}
+		IntList locatedPositions = new IntList();
+		IntList locatedDistances = new IntList();
+		weightedWuManber(haystack, maxCost, costs, locatedPositions, locatedDistances);
+		
+		List<Match> locatedMatches = new ArrayList<Match>(locatedPositions.size());
+		for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+			locatedMatches.add(new Match(locatedPositions.get(p), locatedDistances.get(p)));
+		}
+		return locatedMatches;
+	}
+	
+	/**
+	 * Scan the haystack from end to start for matches within the cost.
+	 * Positions are added in descending order.
+	 * 
+	 * @param locatedDistances - receives the cost of each match, or null
+	 */
+	private void weightedWuManber(CharSequence haystack, int maxCost, EditCosts costs,
+			IntList locatedPositions, IntList locatedDistances) {
+		if (maxCost < 0) {
+			throw new IllegalArgumentException("Cost must not be negative: " + maxCost);
+		}
+		int length = haystack.length();
+		if (classes.length * (long) costs.getInsertion() <= maxCost) {
+			// The empty substring at the end matches by deleting the needle
+			locatedPositions.add(length);
+			if (locatedDistances != null) {
+				locatedDistances.add(classes.length * costs.getInsertion());
+			}
+		}
+		if (classes.length > SINGLE_WORD_LIMIT) {
+			wideWeightedWuManber(haystack, maxCost, costs, locatedPositions, locatedDistances);
+		} else {
+			narrowWeightedWuManber(haystack, maxCost, costs, locatedPositions, locatedDistances);
+		}
+	}
+	
+	/**
+	 * Weighted Wu-Manber algorithm for needles of at most 63 characters.
+	 * 
+	 * @param locatedDistances - receives the cost of each match, or null
+	 */
+	private void narrowWeightedWuManber(CharSequence haystack, int maxCost, EditCosts costs,
+			IntList locatedPositions, IntList locatedDistances) {
+		int ins = costs.getInsertion();
+		int del = costs.getDeletion();
+		int sub = costs.getSubstitution();
+		long[] bitArray = new long[maxCost + 1];
+		for (int c = 0; c <= maxCost; c++) {
+			int inserted = c / ins;
+			bitArray[c] = inserted < SINGLE_WORD_LIMIT ? ~0L << (inserted + 1) : 0;
+		}
+		long[] old = new long[maxCost + 1];
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			long mask = alphabetMasks[symbols.code(haystack.charAt(i))];
+			System.arraycopy(bitArray, 0, old, 0, old.length);
+			for (int c = 0; c <= maxCost; c++) {
+				long row = (old[c] << 1) | mask;
+				if (c >= sub) {
+					row &= old[c - sub] << 1;
+				}
+				if (c >= del) {
+					row &= old[c - del];
+				}
+				if (c >= ins) {
+					row &= bitArray[c - ins] << 1;
+				}
+				bitArray[c] = row;
+			}
+			
+			if (0 == (bitArray[maxCost] & matchBit)) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					int c = 0;
+					while (0 != (bitArray[c] & matchBit)) {
+						c++;
+					}
+					locatedDistances.add(c);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Weighted Wu-Manber algorithm for needles longer than 63 characters.
+	 * 
+	 * @param locatedDistances - receives the cost of each match, or null
+	 */
+	private void wideWeightedWuManber(CharSequence haystack, int maxCost, EditCosts costs,
+			IntList locatedPositions, IntList locatedDistances) {
+		int ins = costs.getInsertion();
+		int del = costs.getDeletion();
+		int sub = costs.getSubstitution();
+		long[] bitArray = new long[(maxCost + 1) * words];
+		Arrays.fill(bitArray, ~0L);
+		for (int c = 0; c <= maxCost; c++) {
+			for (int bit = 0; bit <= c / ins && bit < words * Long.SIZE; bit++) {
+				bitArray[c * words + bit / Long.SIZE] &= ~(1L << (bit % Long.SIZE));
+			}
+		}
+		long[] old = new long[bitArray.length];
+		int last = maxCost * words + words - 1;
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			int mask = symbols.code(haystack.charAt(i)) * words;
+			System.arraycopy(bitArray, 0, old, 0, old.length);
+			for (int c = 0; c <= maxCost; c++) {
+				int row = c * words;
+				int subRow = (c - sub) * words;
+				int delRow = (c - del) * words;
+				int insRow = (c - ins) * words;
+				long matchCarry = 0;
+				long subCarry = 0;
+				long insCarry = 0;
+				for (int w = 0; w < words; w++) {
+					long word = (old[row + w] << 1) | matchCarry | alphabetMasks[mask + w];
+					matchCarry = old[row + w] >>> 63;
+					if (c >= sub) {
+						word &= (old[subRow + w] << 1) | subCarry;
+						subCarry = old[subRow + w] >>> 63;
+					}
+					if (c >= del) {
+						word &= old[delRow + w];
+					}
+					if (c >= ins) {
+						word &= (bitArray[insRow + w] << 1) | insCarry;
+						insCarry = bitArray[insRow + w] >>> 63;
+					}
+					bitArray[row + w] = word;
+				}
+			}
+			
+			if (0 == (bitArray[last] & matchBit)) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					int c = 0;
+					while (0 != (bitArray[c * words + words - 1] & matchBit)) {
+						c++;
+					}
+					locatedDistances.add(c);
+				}
+			}
+		}
+	}
+	
+	/* Myers implementation notes
+	 * 
+	 * Myers' algorithm encodes a column of the dynamic-programming matrix
+	 * of Levenshtein distances as two bit vectors of vertical deltas: Pv,
+	 * marking where the distance increases by one going down the column, and
+	 * Mv, marking where it decreases by one. Advancing a column takes a fixed
+	 * number of word operations no matter the maximum Levenshtein distance,
+	 * unlike Wu-Manber, which updates lev + 1 rows. The distance of the best
+	 * match is tracked as a single score at the bottom of the column.
+	 * 
+	 * As with Wu-Manber, the haystack is scanned from end to start with a
+	 * reversed needle, so the score is the distance of the closest substring
+	 * starting (rather than ending) at the current position. Needles longer
+	 * than 64 characters are split over several blocks, passing horizontal
+	 * deltas from each block to the next, as in Myers' original paper.
+	 */
+	
+	/**
+	 * Myers' algorithm. Finds all approximate (within a given Levenshtein
+	 * distance) matches of a needle within a haystack. Finds the same
+	 * positions as wuManber(), but in time independent of the distance.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return an ArrayList<Integer> containing the positions where a
+	 * valid substring match can start
+	 */
+	public List<Integer> myers(CharSequence haystack, int lev) {
+		IntList locatedPositions = new IntList();
+		myers(haystack, lev, locatedPositions, null);
+		return locatedPositions.toReversedList();
+	}
+	
+	/**
+	 * Myers' algorithm. Passes the positions of all approximate (within a
+	 * given Levenshtein distance) matches of the needle to the consumer, in
+	 * ascending order, without boxing them.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void myers(CharSequence haystack, int lev, IntConsumer consumer) {
+		IntList locatedPositions = new IntList();
+		myers(haystack, lev, locatedPositions, null);
+		locatedPositions.forEachReversed(consumer);
+	}
+	
+	/**
+	 * Myers' algorithm. Finds all approximate (within a given Levenshtein
+	 * distance) matches of a needle within a haystack, along with the
+	 * Levenshtein distance of each.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return an ArrayList<Match> containing the positions where a valid
+	 * substring match can start, in order, and the distance of each match
+	 */
+	public List<Match> myersMatches(CharSequence haystack, int lev) {
+		IntList locatedPositions = new IntList();
+		IntList locatedDistances = new IntList();
+		myers(haystack, lev, locatedPositions, locatedDistances);
+		
+		List<Match> locatedMatches = new ArrayList<Match>(locatedPositions.size());
+		for (int p = locatedPositions.size() - 1; p >= 0; p--) {
+			locatedMatches.add(new Match(locatedPositions.get(p), locatedDistances.get(p)));
+		}
+		return locatedMatches;
+	}
+	
+	/**
+	 * Scan the haystack from end to start with Myers' algorithm. Positions
+	 * are added in descending order.
+	 * 
+	 * @param locatedDistances - receives the distance of each match, or null
+	 */
+	private void myers(CharSequence haystack, int lev, IntList locatedPositions,
+			IntList locatedDistances) {
+		long[] pv = new long[blocks];
+		long[] mv = new long[blocks];
+		Arrays.fill(pv, ~0L);
+		int score = classes.length;
+		
+		// The empty substring at the very end of the haystack
+		if (score <= lev) {
+			locatedPositions.add(haystack.length());
+			if (locatedDistances != null) {
+				locatedDistances.add(score);
+			}
+		}
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			score += advance(matchVectors, symbols.code(haystack.charAt(i)) * blocks, pv, mv, 0);
+			if (score <= lev) {
+				locatedPositions.add(i);
+				if (locatedDistances != null) {
+					locatedDistances.add(score);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Advance Myers' algorithm by one character of the haystack, updating
+	 * the vertical delta vectors of every block in place.
+	 * 
+	 * @param vectors - the match vectors of the needle, either reversed or
+	 * forward
+	 * @param vector - the offset of the current character's match vector
+	 * @param pv - the positive vertical deltas
+	 * @param mv - the negative vertical deltas
+	 * @param hin - the horizontal delta entering the top of the column: 0 if
+	 * a match may begin at any position, 1 if it must begin where the scan
+	 * began
+	 * @return the horizontal delta leaving the bottom of the column, that is,
+	 * the change in score
+	 */
+	private int advance(long[] vectors, int vector, long[] pv, long[] mv, int hin) {
+		for (int b = 0; b < blocks; b++) {
+			long eq = vectors[vector + b];
+			long xv = eq | mv[b];
+			if (hin < 0) {
+				eq |= 1;
+			}
+			long xh = (((eq & pv[b]) + pv[b]) ^ pv[b]) | eq;
+			long ph = mv[b] | ~(xh | pv[b]);
+			long mh = pv[b] & xh;
+			
+			long high = b == blocks - 1 ? scoreBit : Long.MIN_VALUE;
+			int hout = (ph & high) != 0 ? 1 : (mh & high) != 0 ? -1 : 0;
+			ph <<= 1;
+			mh <<= 1;
+			if (hin < 0) {
+				mh |= 1;
+			} else if (hin > 0) {
+				ph |= 1;
+			}
+			pv[b] = mh | ~(xv | ph);
+			mv[b] = ph & xv;
+			hin = hout;
+		}
+		return hin;
+	}
+	
+	/* Forward-scanning implementation notes
+	 * 
+	 * Scanning from end to start means nothing can be reported until the
+	 * whole haystack is available. The forward scan instead runs Myers'
+	 * algorithm from start to end over the needle as written, so a match is
+	 * known as soon as its last character has been read, and the end
+	 * position can be reported at once. As explained in the Wu-Manber
+	 * notes, the start position cannot simply be found by subtracting the
+	 * needle length. So for each end position, a short backward pass
+	 * recovers the start: Myers' algorithm again, over the reversed needle,
+	 * but anchored at the end position, so that the score after reading back
+	 * to position i is exactly the distance between the needle and the
+	 * substring [i, end). A match is at most needle-length + lev characters
+	 * long, which bounds both this pass and the number of characters that
+	 * must be kept around for it.
+	 */
+	
+	/**
+	 * Forward-scanning approximate search. Reads the haystack from start to
+	 * end, and as soon as the end of an approximate (within a given
+	 * Levenshtein distance) match of the needle has been read, passes the
+	 * match to the consumer. Each end position is reported once, along with
+	 * the start position giving the smallest distance (the left-most, if
+	 * several do). To search a CharSequence, wrap it with CharBuffer.wrap().
+	 * 
+	 * @param haystack - the characters to search in.
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the start, end (exclusive) and distance of
+	 * each match
+	 */
+	public void searchForward(Readable haystack, int lev, MatchConsumer consumer) throws IOException {
+		char[] window = new char[Integer.highestOneBit(classes.length + lev + 1) << 1];
+		int wrap = window.length - 1;
+		CharBuffer buffer = CharBuffer.allocate(STREAM_BUFFER_SIZE);
+		long[] pv = new long[blocks];
+		long[] mv = new long[blocks];
+		long[] verifyPv = new long[blocks];
+		long[] verifyMv = new long[blocks];
+		Arrays.fill(pv, ~0L);
+		int score = classes.length;
+		long end = 0;
+		
+		// The empty substring at the very start of the haystack
+		if (score <= lev) {
+			consumer.accept(0, 0, score);
+		}
+		
+		while (haystack.read(buffer) >= 0) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				char c = buffer.get();
+				window[(int) end & wrap] = c;
+				end++;
+				score += advance(forwardVectors, symbols.code(c) * blocks, pv, mv, 0);
+				if (score <= lev) {
+					recoverStart(window, end, lev, verifyPv, verifyMv, consumer);
+				}
+			}
+			buffer.clear();
+		}
+	}
+	
+	/**
+	 * Find the start of a match ending at the given position, by scanning
+	 * the last needle-length + lev characters backwards.
+	 * 
+	 * @param window - a circular buffer holding at least the last
+	 * needle-length + lev characters of the haystack
+	 * @param end - the position (exclusive) where the match ends
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 */
+	private void recoverStart(char[] window, long end, int lev, long[] pv, long[] mv,
+			MatchConsumer consumer) {
+		Arrays.fill(pv, ~0L);
+		Arrays.fill(mv, 0);
+		int wrap = window.length - 1;
+		long floor = Math.max(0, end - classes.length - lev);
+		int score = classes.length;
+		int distance = score;
+		long start = end;
+		
+		for (long i = end - 1; i >= floor; i--) {
+			score += advance(matchVectors, symbols.code(window[(int) i & wrap]) * blocks, pv, mv, 1);
+			if (score <= distance) {
+				distance = score;
+				start = i;
+			}
+		}
+		consumer.accept(start, end, distance);
 	}
-}
\ No newline at end of file
+}
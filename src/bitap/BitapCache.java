@@ -0,0 +1,188 @@
+package bitap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of compiled needles, so that needles searched for again and
+ * again have their masks computed only once. When full, the least recently
+ * used needle is evicted. Counts of hits, misses and evictions are kept for
+ * monitoring.
+ * 
+ * The cache is safe to use from many threads. Needles are compiled outside of
+ * the cache's lock, so a slow compilation never blocks lookups of other
+ * needles; two threads missing on the same needle at once may both compile
+ * it, but only one of the results is kept.
+ * 
+ * @author Mason M Lai
+ */
+public final class BitapCache {
+	private final int maximumSize;
+	private final Map<Key, Bitap> patterns;
+	private long hits;
+	private long misses;
+	private long evictions;
+	
+	/**
+	 * BitapCache constructor.
+	 * @param maximumSize - the most compiled needles to keep.
+	 */
+	public BitapCache(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		patterns = new LinkedHashMap<Key, Bitap>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Bitap> eldest) {
+				if (size() > BitapCache.this.maximumSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Look up a compiled needle, compiling and caching it if it is not
+	 * already cached.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack.
+	 * @return the compiled needle
+	 */
+	public Bitap get(String needle, Set<Character> alphabet) {
+		return get(needle, alphabet, UnknownCharacters.REJECT);
+	}
+	
+	/**
+	 * Look up a compiled needle, compiling and caching it if it is not
+	 * already cached.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 * @return the compiled needle
+	 */
+	public Bitap get(String needle, Set<Character> alphabet, UnknownCharacters unknown) {
+		return get(needle, alphabet, unknown, Equivalences.NONE);
+	}
+	
+	/**
+	 * Look up a compiled needle, compiling and caching it if it is not
+	 * already cached.
+	 * @param needle - the substring to search for.
+	 * @param alphabet - the total set of characters composing both the needle
+	 * and the haystack.
+	 * @param unknown - what to do with characters of the haystack outside the
+	 * alphabet.
+	 * @param equivalences - characters of the needle and haystack to read as
+	 * symbols of the alphabet.
+	 * @return the compiled needle
+	 */
+	public Bitap get(String needle, Set<Character> alphabet, UnknownCharacters unknown,
+			Equivalences equivalences) {
+		Key key = new Key(needle, alphabet, unknown, equivalences);
+		synchronized (patterns) {
+			Bitap pattern = patterns.get(key);
+			if (pattern != null) {
+				hits++;
+				return pattern;
+			}
+			misses++;
+		}
+		
+		Bitap compiled = Bitap.compile(needle, alphabet, unknown, equivalences);
+		// Key the entry by the compiled copy, which the caller cannot modify
+		key = new Key(needle, compiled.getAlphabet(), unknown, equivalences);
+		synchronized (patterns) {
+			Bitap pattern = patterns.putIfAbsent(key, compiled);
+			return pattern != null ? pattern : compiled;
+		}
+	}
+	
+	/**
+	 * @return the number of compiled needles currently cached
+	 */
+	public int size() {
+		synchronized (patterns) {
+			return patterns.size();
+		}
+	}
+	
+	/**
+	 * @return the number of lookups that found their needle cached
+	 */
+	public long hitCount() {
+		synchronized (patterns) {
+			return hits;
+		}
+	}
+	
+	/**
+	 * @return the number of lookups that had to compile their needle
+	 */
+	public long missCount() {
+		synchronized (patterns) {
+			return misses;
+		}
+	}
+	
+	/**
+	 * @return the number of compiled needles evicted to stay within the
+	 * maximum size
+	 */
+	public long evictionCount() {
+		synchronized (patterns) {
+			return evictions;
+		}
+	}
+	
+	/**
+	 * Empty the cache. The counts of hits, misses and evictions are kept.
+	 */
+	public void clear() {
+		synchronized (patterns) {
+			patterns.clear();
+		}
+	}
+	
+	/**
+	 * Everything a compiled needle depends on.
+	 */
+	private static final class Key {
+		private final String needle;
+		private final Set<Character> alphabet;
+		private final UnknownCharacters unknown;
+		private final Equivalences equivalences;
+		
+		Key(String needle, Set<Character> alphabet, UnknownCharacters unknown,
+				Equivalences equivalences) {
+			this.needle = needle;
+			this.alphabet = alphabet;
+			this.unknown = unknown;
+			this.equivalences = equivalences;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return needle.equals(other.needle) && alphabet.equals(other.alphabet)
+					&& unknown == other.unknown && equivalences.equals(other.equivalences);
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = (31 * needle.hashCode() + alphabet.hashCode()) * 31 + unknown.hashCode();
+			return hash * 31 + equivalences.hashCode();
+		}
+	}
+}
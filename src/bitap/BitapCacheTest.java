@@ -0,0 +1,85 @@
+package bitap;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BitapCacheTest {
+	private static Set<Character> alphabet() {
+		return new HashSet<Character>(Arrays.asList('A', 'C', 'G', 'T'));
+	}
+	
+	@Test
+	public void repeatedNeedleIsCompiledOnce() {
+		BitapCache cache = new BitapCache(10);
+		Bitap first = cache.get("ATTA", alphabet());
+		Bitap second = cache.get("ATTA", alphabet());
+		assertSame(first, second);
+		assertEquals(1, cache.missCount());
+		assertEquals(1, cache.hitCount());
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void differentAlphabetsAreDifferentEntries() {
+		BitapCache cache = new BitapCache(10);
+		Set<Character> rna = new HashSet<Character>(Arrays.asList('A', 'C', 'G', 'U'));
+		assertNotSame(cache.get("AC", alphabet()), cache.get("AC", rna));
+		assertEquals(2, cache.missCount());
+	}
+	
+	@Test
+	public void changingAlphabetAfterLookupDoesNotChangeEntry() {
+		BitapCache cache = new BitapCache(10);
+		Set<Character> dna = alphabet();
+		Bitap first = cache.get("ATTA", dna);
+		dna.add('N');
+		assertNotSame(first, cache.get("ATTA", dna));
+		assertSame(first, cache.get("ATTA", alphabet()));
+	}
+	
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		BitapCache cache = new BitapCache(2);
+		Bitap atta = cache.get("ATTA", alphabet());
+		cache.get("GATC", alphabet());
+		cache.get("ATTA", alphabet());
+		cache.get("CCGG", alphabet());
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.evictionCount());
+		assertSame(atta, cache.get("ATTA", alphabet()));
+		cache.get("GATC", alphabet());
+		assertEquals(4, cache.missCount());
+		assertEquals(2, cache.hitCount());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyCacheIsRejected() {
+		new BitapCache(0);
+	}
+	
+	@Test
+	public void unknownCharacterHandlingIsPartOfKey() {
+		BitapCache cache = new BitapCache(10);
+		Bitap reject = cache.get("ATTA", alphabet());
+		Bitap mismatch = cache.get("ATTA", alphabet(), UnknownCharacters.MISMATCH);
+		assertNotSame(reject, mismatch);
+		assertSame(reject, cache.get("ATTA", alphabet(), UnknownCharacters.REJECT));
+		assertEquals(UnknownCharacters.MISMATCH, mismatch.getUnknownCharacters());
+	}
+	
+	@Test
+	public void equivalencesArePartOfKey() {
+		BitapCache cache = new BitapCache(10);
+		Bitap exact = cache.get("ATTA", alphabet());
+		Equivalences ignoreCase = Equivalences.NONE.ignoringCase();
+		Bitap folded = cache.get("ATTA", alphabet(), UnknownCharacters.REJECT, ignoreCase);
+		assertNotSame(exact, folded);
+		assertSame(folded, cache.get("ATTA", alphabet(), UnknownCharacters.REJECT,
+				Equivalences.NONE.ignoringCase()));
+	}
+}
@@ -0,0 +1,91 @@
+package bitap;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Searches haystacks for the needle of a Bitap, holding on to scratch space
+ * (the bit array and the buffer of located positions) from one search to the
+ * next, much like a java.util.regex.Matcher does for its Pattern. This suits
+ * many searches of short haystacks, where allocating fresh scratch space
+ * would otherwise cost as much as the search itself.
+ * 
+ * A matcher is not thread-safe. The Bitap it came from is, so each thread
+ * should create its own matcher from a shared Bitap.
+ * 
+ * @author Mason M Lai
+ */
+public final class BitapMatcher {
+	private final Bitap pattern;
+	private long[] bitArray;
+	private final IntList locatedPositions;
+	
+	/**
+	 * BitapMatcher constructor.
+	 * @param pattern - the compiled needle to search for.
+	 */
+	BitapMatcher(Bitap pattern) {
+		this.pattern = pattern;
+		bitArray = new long[1];
+		locatedPositions = new IntList();
+	}
+	
+	/**
+	 * @return the compiled needle this matcher searches for
+	 */
+	public Bitap pattern() {
+		return pattern;
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Checks if any match (within a given Levenshtein
+	 * distance) of the needle exists within a haystack. No memory is
+	 * allocated unless lev is larger than in any earlier search.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return a boolean if the needle exists within the haystack
+	 */
+	public boolean within(CharSequence haystack, int lev) {
+		ensureScratch(lev);
+		return pattern.within(haystack, lev, bitArray, locatedPositions);
+	}
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm. Passes the positions of all exact matches
+	 * of the needle to the consumer, in ascending order.
+	 * 
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void baezaYatesGonnet(CharSequence haystack, IntConsumer consumer) {
+		wuManber(haystack, 0, consumer);
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Passes the positions of all approximate (within a
+	 * given Levenshtein distance) matches of the needle to the consumer, in
+	 * ascending order. No memory is allocated unless lev is larger, or more
+	 * positions are found, than in any earlier search.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @param consumer - receives the positions where a valid substring
+	 * match can start
+	 */
+	public void wuManber(CharSequence haystack, int lev, IntConsumer consumer) {
+		ensureScratch(lev);
+		locatedPositions.clear();
+		pattern.search(haystack, 0, haystack.length(), haystack.length(), lev, false,
+				locatedPositions, bitArray);
+		locatedPositions.forEachReversed(consumer);
+	}
+	
+	/**
+	 * Grow the bit array if a search with the given distance needs more
+	 * scratch space than any earlier search.
+	 */
+	private void ensureScratch(int lev) {
+		int length = pattern.scratchLength(lev);
+		if (bitArray.length < length) {
+			bitArray = new long[length];
+		}
+	}
+}
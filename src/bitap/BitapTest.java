@@ -2,14 +2,99 @@ package bitap;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
 public class BitapTest {
 	private static Character[] alphabet = {'A', 'C', 'G', 'T'}; 
 	
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet[random.nextInt(alphabet.length)]);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Every match of a needle within a cost, by dynamic programming over each
+	 * start position, with edits named as in Bitap.alignment(): an insertion
+	 * is a needle character missing from the haystack, a deletion a haystack
+	 * character missing from the needle.
+	 */
+	private static List<Match> bruteForceMatches(String needle, String haystack, int maxCost,
+			EditCosts costs) {
+		List<Match> matches = new ArrayList<Match>();
+		int m = needle.length();
+		for (int i = 0; i <= haystack.length(); i++) {
+			// Past m + maxCost / deletion characters, the deletions alone cost
+			// more than maxCost
+			int n = Math.min(haystack.length() - i, m + maxCost / costs.getDeletion());
+			// cost[a][b] aligns the first a characters of the needle with the
+			// first b characters from position i
+			int[][] cost = new int[m + 1][n + 1];
+			for (int b = 0; b <= n; b++) {
+				cost[0][b] = b * costs.getDeletion();
+			}
+			for (int a = 1; a <= m; a++) {
+				cost[a][0] = a * costs.getInsertion();
+				for (int b = 1; b <= n; b++) {
+					int sub = needle.charAt(a - 1) == haystack.charAt(i + b - 1)
+							? 0 : costs.getSubstitution();
+					cost[a][b] = Math.min(cost[a - 1][b - 1] + sub, Math.min(
+							cost[a - 1][b] + costs.getInsertion(),
+							cost[a][b - 1] + costs.getDeletion()));
+				}
+			}
+			int best = Integer.MAX_VALUE;
+			for (int b = 0; b <= n; b++) {
+				best = Math.min(best, cost[m][b]);
+			}
+			if (best <= maxCost) {
+				matches.add(new Match(i, best));
+			}
+		}
+		return matches;
+	}
+	
+	/**
+	 * Every match of a needle within a number of mismatches, comparing the
+	 * needle with the substring at each start position.
+	 */
+	private static List<Match> bruteForceHamming(String needle, String haystack, int mismatches) {
+		List<Match> matches = new ArrayList<Match>();
+		for (int i = 0; i + needle.length() <= haystack.length(); i++) {
+			int distance = 0;
+			for (int j = 0; j < needle.length(); j++) {
+				if (needle.charAt(j) != haystack.charAt(i + j)) {
+					distance++;
+				}
+			}
+			if (distance <= mismatches) {
+				matches.add(new Match(i, distance));
+			}
+		}
+		return matches;
+	}
+	
 	@Test
 	public void bygFindExactMatchInMiddle() {
 		String haystack = "TGATGCATTCGTAGATGC";
@@ -55,6 +140,19 @@ public class BitapTest {
 		assertEquals(test, pos);
 	}
 	
+	@Test
+	public void bygFindExactMatchInSparseAlphabet() {
+		Character[] sparse = {'a', '\u4e00', '\u4e8c', '\u4e09'};
+		String haystack = "a\u4e00\u4e8ca\u4e09\u4e09a\u4e00\u4e8c";
+		String needle = "a\u4e00\u4e8c";
+		Bitap bitap = new Bitap(needle, sparse);
+		List<Integer> pos = bitap.baezaYatesGonnet(haystack);
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(0);
+		test.add(6);
+		assertEquals(test, pos);
+	}
+	
 	@Test
 	public void wuFindExactMatchInMiddle() {
 		String haystack = "TGATGCATTCGTAGATGC";
@@ -140,7 +238,7 @@ public class BitapTest {
 		assertEquals(test, pos);
 		assertTrue(bitap.within(haystack, 1));
 	}
-
+	
 	@Test
 	public void wuFindMatchWithTwoDeletionsAtStart() {
 		String haystack = "ATGTTAATCTAGGGCGTAATGATTGTTAGATTAGATTAGTAGATGC";
@@ -152,7 +250,7 @@ public class BitapTest {
 		assertEquals(test, pos);
 		assertTrue(bitap.within(haystack, 2));
 	}
-
+	
 	@Test
 	public void wuFindMatchWithOneDeletionAtEnd() {
 		String haystack = "GATGTTAATCTAGGGCGTAATGATTGTTAGATTAGATTAGTAGATG";
@@ -164,7 +262,7 @@ public class BitapTest {
 		assertEquals(test, pos);
 		assertTrue(bitap.within(haystack, 1));
 	}
-
+	
 	@Test
 	public void wuFindMatchWithTwoDeletionsAtEnd() {
 		String haystack = "GATGTTAATCTAGGGCGTAATGATTGTTAGATTAGATTAGTAGAT";
@@ -176,7 +274,7 @@ public class BitapTest {
 		assertEquals(test, pos);
 		assertTrue(bitap.within(haystack, 2));
 	}
-
+	
 	@Test
 	public void wuFindMatchWithOneInternalSubstitution() {
 		String haystack = "TGATCATTATTAGTAGATGC";
@@ -274,4 +372,738 @@ public class BitapTest {
 		test.add(57);
 		assertEquals(test, pos);
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void bygFindLongExactMatch() {
+		Random random = new Random(150);
+		String needle = randomSequence(random, 150);
+		String haystack = randomSequence(random, 40) + needle + randomSequence(random, 40);
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Integer> pos = bitap.baezaYatesGonnet(haystack);
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(40);
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void bygFindExactMatchOfLengthSixtyThree() {
+		Random random = new Random(63);
+		String needle = randomSequence(random, 63);
+		String haystack = randomSequence(random, 10) + needle + randomSequence(random, 10);
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Integer> pos = bitap.baezaYatesGonnet(haystack);
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(10);
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void wuFindLongMatchWithOneInternalDeletion() {
+		Random random = new Random(300);
+		String needle = randomSequence(random, 300);
+		String read = needle.substring(0, 200) + needle.substring(201);
+		String haystack = randomSequence(random, 40) + read + randomSequence(random, 40);
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Integer> test = new ArrayList<Integer>();
+		assertEquals(test, bitap.wuManber(haystack, 0));
+		assertFalse(bitap.within(haystack, 0));
+		
+		test.add(40);
+		assertEquals(test, bitap.wuManber(haystack, 1));
+		assertTrue(bitap.within(haystack, 1));
+	}
+	
+	@Test
+	public void myersFindMatchesWithOneInternalDeletion() {
+		String haystack = "TGATGTTAATCTAGGGCGTAATGATTGTTAGATTAGATTAGTAGATGC";
+		String needle = "GTTAGATCTAG";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Integer> pos = bitap.myers(haystack, 1);
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(4);
+		test.add(26);
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void myersDemonstrateAmbiguity() {
+		String haystack = "GGGGGGGGGGGGGAAAAAGGGGGGGGGGGGGGGG";
+		String needle = "AAAAA";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Match> matches = bitap.myersMatches(haystack, 3);
+		List<Match> test = new ArrayList<Match>();
+		test.add(new Match(10, 3));
+		test.add(new Match(11, 2));
+		test.add(new Match(12, 1));
+		test.add(new Match(13, 0));
+		test.add(new Match(14, 1));
+		test.add(new Match(15, 2));
+		test.add(new Match(16, 3));
+		assertEquals(test, matches);
+		assertEquals(bitap.wuManber(haystack, 3), bitap.myers(haystack, 3));
+	}
+	
+	@Test
+	public void myersCheckSequentialCase() {
+		String haystack = "GAGATGGATGACAACTTATACGGCCCCTACTTTTGACTTGCCCTCCACTTCATCCCGACAACTGGGCTTACTCGTGGGGTGACTTGTCATGTCTTCCGATCTTGTCTTGATTAGAAG";
+		String needle = "ACAACTGGGTCGTAGTCTTGGG";
+		Bitap bitap = new Bitap(needle, alphabet);
+		for (int lev = 0; lev <= 6; lev++) {
+			assertEquals(bitap.wuManber(haystack, lev), bitap.myers(haystack, lev));
+			List<Integer> test = new ArrayList<Integer>();
+			bitap.myers(haystack, lev, test::add);
+			assertEquals(bitap.wuManber(haystack, lev), test);
+		}
+	}
+	
+	@Test
+	public void myersFindLongMatchWithOneInternalInsertion() {
+		Random random = new Random(200);
+		String needle = randomSequence(random, 200);
+		String read = needle.substring(0, 130) + "A" + needle.substring(130);
+		String haystack = randomSequence(random, 40) + read + randomSequence(random, 40);
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Match> test = new ArrayList<Match>();
+		assertEquals(test, bitap.myersMatches(haystack, 0));
+		
+		test.add(new Match(40, 1));
+		assertEquals(test, bitap.myersMatches(haystack, 1));
+		assertEquals(bitap.wuManber(haystack, 2), bitap.myers(haystack, 2));
+	}
+	
+	@Test
+	public void wuStreamMatchesAcrossBufferBoundaries() throws IOException {
+		Random random = new Random(100000);
+		String needle = "AGGGCGTAATGATTGT";
+		String read = "AGGGCGTCAATGATTGT";
+		StringBuilder sb = new StringBuilder(randomSequence(random, 200000));
+		sb.insert(100, needle);
+		sb.insert(65530, read);
+		sb.insert(150000, read);
+		String haystack = sb.toString();
+		Bitap bitap = new Bitap(needle, alphabet);
+		
+		List<Long> pos = new ArrayList<Long>();
+		bitap.wuManber(new StringReader(haystack), 1, pos::add);
+		List<Long> test = new ArrayList<Long>();
+		for (int p : bitap.wuManber(haystack, 1)) {
+			test.add((long) p);
+		}
+		assertTrue(test.contains(65530L));
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void bygStreamFindEmptyNeedle() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 70000; i++) {
+			sb.append('A');
+		}
+		List<Long> pos = new ArrayList<Long>();
+		new Bitap("", alphabet).baezaYatesGonnet(new StringReader(sb.toString()), pos::add);
+		assertEquals(70001, pos.size());
+		for (int i = 0; i < pos.size(); i++) {
+			assertEquals(i, (long) pos.get(i));
+		}
+	}
+	
+	@Test
+	public void bygStreamMatchesFromChannel() throws IOException {
+		String haystack = "TGATGCATTATTAGTAGATGC";
+		String needle = "ATTA";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Long> pos = new ArrayList<Long>();
+		ByteArrayInputStream bytes = new ByteArrayInputStream(haystack.getBytes(StandardCharsets.US_ASCII));
+		bitap.baezaYatesGonnet(Channels.newChannel(bytes), StandardCharsets.US_ASCII, pos::add);
+		List<Long> test = new ArrayList<Long>();
+		test.add(6L);
+		test.add(9L);
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void wuFindMatchInStringBuilder() {
+		StringBuilder haystack = new StringBuilder("TGATGATTATTAGTAGATGC");
+		String needle = "ATGCATTAT";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Integer> pos = bitap.wuManber(haystack, 1);
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(2);
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void forwardFindOverlappingExactMatches() throws IOException {
+		String haystack = "TGATGCATTATTAGTAGATGC";
+		String needle = "ATTA";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<String> matches = new ArrayList<String>();
+		bitap.searchForward(CharBuffer.wrap(haystack), 0,
+				(start, end, distance) -> matches.add(start + "-" + end + ":" + distance));
+		List<String> test = new ArrayList<String>();
+		test.add("6-10:0");
+		test.add("9-13:0");
+		assertEquals(test, matches);
+	}
+	
+	@Test
+	public void forwardRecoverStartOfMatchWithOneInternalInsertion() throws IOException {
+		String haystack = "GATGTTAATCTAGGTGCGTAATGATTGTTAGATTAGATTAGTAGATG";
+		String needle = "AGGGCGTAATGATTGT";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<String> matches = new ArrayList<String>();
+		bitap.searchForward(new StringReader(haystack), 1,
+				(start, end, distance) -> matches.add(start + "-" + end + ":" + distance));
+		List<String> test = new ArrayList<String>();
+		test.add("11-28:1");
+		assertEquals(test, matches);
+	}
+	
+	@Test
+	public void wuFindMatchesInMappedFile() throws IOException {
+		String haystack = "TGATGTTAATCTAGGGCGTAATGATTGTTAGATTAGATTAGTAGATGC";
+		String needle = "GTTAGATCTAG";
+		Bitap bitap = new Bitap(needle, alphabet);
+		Path file = Files.createTempFile("bitap", ".txt");
+		try {
+			Files.write(file, haystack.getBytes(StandardCharsets.US_ASCII));
+			List<Long> pos = new ArrayList<Long>();
+			bitap.wuManber(file, 1, pos::add);
+			List<Long> test = new ArrayList<Long>();
+			test.add(4L);
+			test.add(26L);
+			assertEquals(test, pos);
+			
+			pos.clear();
+			bitap.baezaYatesGonnet(file, pos::add);
+			assertTrue(pos.isEmpty());
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void bygFindLongExactMatchInMappedFile() throws IOException {
+		Random random = new Random(100);
+		String needle = randomSequence(random, 100);
+		String haystack = randomSequence(random, 40) + needle + randomSequence(random, 40);
+		Bitap bitap = new Bitap(needle, alphabet);
+		Path file = Files.createTempFile("bitap", ".txt");
+		try {
+			Files.write(file, haystack.getBytes(StandardCharsets.US_ASCII));
+			List<Long> pos = new ArrayList<Long>();
+			bitap.baezaYatesGonnet(file, pos::add);
+			List<Long> test = new ArrayList<Long>();
+			test.add(40L);
+			assertEquals(test, pos);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void wuParallelMatchesSequential() {
+		Random random = new Random(1000000);
+		String needle = "AGGGCGTAATGATTGT";
+		StringBuilder sb = new StringBuilder(randomSequence(random, 1000000));
+		for (int i = 0; i < 100; i++) {
+			sb.insert(random.nextInt(sb.length()), "AGGGCGTCAATGATTGT");
+		}
+		String haystack = sb.toString();
+		Bitap bitap = new Bitap(needle, alphabet);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(bitap.baezaYatesGonnet(haystack), bitap.baezaYatesGonnet(haystack, pool));
+			assertEquals(bitap.wuManber(haystack, 1), bitap.wuManber(haystack, 1, pool));
+			assertEquals(bitap.wuManber(haystack, 3), bitap.wuManber(haystack, 3, pool));
+			List<Integer> test = new ArrayList<Integer>();
+			bitap.wuManber(haystack, 2, pool, test::add);
+			assertEquals(bitap.wuManber(haystack, 2), test);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void bygFindFirstMatchInEachHaystack() {
+		String[] haystacks = {
+				"TGATGCATTATTAGTAGATGC",
+				"ATTAGATGCATCAGTAGATGC",
+				"GATGCATCAGTAGATGCATTC",
+				"",
+				"GATGCATCAGTAGATGCATTA",
+				"TGATGCATTATTAGTAGATGCAGTAGATTAGTAGATGC",
+				"ATTA",
+				"ATT",
+				"CATTACATTA"};
+		String needle = "ATTA";
+		Bitap bitap = new Bitap(needle, alphabet);
+		int[] test = {6, 0, -1, -1, 17, 6, 0, -1, 1};
+		assertArrayEquals(test, bitap.firstMatches(haystacks));
+	}
+	
+	@Test
+	public void wuWithinEachHaystack() {
+		Random random = new Random(13);
+		String needle = "AGGGCGTAATGATTGT";
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<String> haystacks = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			StringBuilder sb = new StringBuilder(randomSequence(random, 100));
+			if (random.nextBoolean()) {
+				sb.insert(random.nextInt(sb.length()), "AGGGCGTCAATATTGT");
+			}
+			haystacks.add(sb.toString());
+		}
+		haystacks.add("");
+		for (int lev = 0; lev <= 3; lev++) {
+			BitSet found = bitap.within(haystacks, lev);
+			for (int i = 0; i < haystacks.size(); i++) {
+				assertEquals(!bitap.wuManber(haystacks.get(i), lev).isEmpty(), found.get(i));
+			}
+		}
+		assertEquals(haystacks.size(), bitap.within(haystacks, needle.length()).cardinality());
+	}
+	
+	@Test
+	public void wuConsumerMatchesList() {
+		Random random = new Random(14);
+		String needle = "AGGGCGTAATGATTGT";
+		StringBuilder sb = new StringBuilder(randomSequence(random, 100000));
+		for (int i = 0; i < 100; i++) {
+			sb.insert(random.nextInt(sb.length()), "AGGGCGTCAATGATTGT");
+		}
+		String haystack = sb.toString();
+		Bitap bitap = new Bitap(needle, alphabet);
+		List<Integer> test = new ArrayList<Integer>();
+		bitap.baezaYatesGonnet(haystack, test::add);
+		assertEquals(bitap.baezaYatesGonnet(haystack), test);
+		for (int lev = 1; lev <= 3; lev++) {
+			test.clear();
+			bitap.wuManber(haystack, lev, test::add);
+			assertEquals(bitap.wuManber(haystack, lev), test);
+		}
+	}
+	
+	@Test
+	public void wuFirstMatchesWithLimit() {
+		Random random = new Random(15);
+		String needle = "AGGGCGTAATGATTGT";
+		StringBuilder sb = new StringBuilder(randomSequence(random, 200000));
+		for (int i = 0; i < 100; i++) {
+			sb.insert(random.nextInt(sb.length()), i % 10 == 0 ? needle : "AGGGCGTCAATGATTGT");
+		}
+		String haystack = sb.toString();
+		Bitap bitap = new Bitap(needle, alphabet);
+		for (int lev = 0; lev <= 2; lev++) {
+			List<Integer> all = bitap.wuManber(haystack, lev);
+			assertEquals(all, bitap.wuManber(haystack, lev, SearchOptions.NONE));
+			assertEquals(all.size(), bitap.count(haystack, lev, SearchOptions.NONE));
+			for (int maxHits : new int[] {0, 1, 5, all.size() + 1}) {
+				SearchOptions options = SearchOptions.NONE.withMaxHits(maxHits);
+				List<Integer> test = all.subList(0, Math.min(maxHits, all.size()));
+				assertEquals(test, bitap.wuManber(haystack, lev, options));
+				assertEquals(test.size(), bitap.count(haystack, lev, options));
+			}
+		}
+		assertEquals(bitap.baezaYatesGonnet(haystack).subList(0, 1),
+				bitap.baezaYatesGonnet(haystack, SearchOptions.NONE.withMaxHits(1)));
+	}
+	
+	@Test(expected = CancellationException.class)
+	public void wuCancelledSearch() {
+		Bitap bitap = new Bitap("AGGGCGTAATGATTGT", alphabet);
+		String haystack = randomSequence(new Random(15), 100000);
+		bitap.wuManber(haystack, 2, SearchOptions.NONE.withCancellation(() -> true));
+	}
+	
+	@Test
+	public void wuMatchesCarryDistance() {
+		Random random = new Random(16);
+		Bitap bitap = new Bitap("AGGGCGTAATGATTGT", alphabet);
+		StringBuilder sb = new StringBuilder(randomSequence(random, 10000));
+		for (int i = 0; i < 20; i++) {
+			sb.insert(random.nextInt(sb.length()), "AGGGCGTCAATGATTGT");
+		}
+		String haystack = sb.toString();
+		for (int lev = 0; lev <= 4; lev++) {
+			assertEquals(bitap.myersMatches(haystack, lev), bitap.wuManberMatches(haystack, lev));
+		}
+		String longNeedle = randomSequence(random, 100);
+		Bitap longBitap = new Bitap(longNeedle, alphabet);
+		String longHaystack = randomSequence(random, 500) + longNeedle.substring(0, 50)
+				+ longNeedle.substring(53) + randomSequence(random, 500);
+		assertEquals(longBitap.myersMatches(longHaystack, 5), longBitap.wuManberMatches(longHaystack, 5));
+	}
+	
+	@Test
+	public void wuAlignment() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		String haystack = "GGATCTAGGATAGGATTAG";
+		List<Match> test = bitap.wuManberMatches(haystack, 1);
+		assertTrue(test.contains(new Match(2, 1)));
+		assertTrue(test.contains(new Match(14, 0)));
+		assertEquals("2=1D2=", bitap.alignment(haystack, new Match(2, 1)));
+		assertEquals("1=1I2=", bitap.alignment(haystack, new Match(9, 1)));
+		assertEquals("4=", bitap.alignment(haystack, new Match(14, 0)));
+		assertEquals("4I", bitap.alignment("", new Match(0, 4)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void wuAlignmentBeyondDistance() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		bitap.alignment("GGGGGGGG", new Match(0, 1));
+	}
+	
+	@Test
+	public void wuBestMatches() {
+		Random random = new Random(17);
+		String needle = "AGGGCGTAATGATTGT";
+		Bitap bitap = new Bitap(needle, alphabet);
+		StringBuilder sb = new StringBuilder(randomSequence(random, 10000));
+		sb.insert(2000, "AGGGCGTCAATGATTGT");
+		sb.insert(6000, "AGGGCGTCAATGATAGT");
+		sb.insert(8000, "AGGGCGTCAATGATTGT");
+		String haystack = sb.toString();
+		List<Match> test = new ArrayList<Match>();
+		for (Match match : bitap.myersMatches(haystack, 1)) {
+			if (match.getDistance() == 1) {
+				test.add(match);
+			}
+		}
+		assertFalse(test.isEmpty());
+		assertEquals(test, bitap.bestMatches(haystack));
+		assertEquals(test, bitap.bestMatches(haystack, 3));
+		assertTrue(bitap.bestMatches(haystack, 0).isEmpty());
+		List<Match> empty = new ArrayList<Match>();
+		empty.add(new Match(0, needle.length()));
+		assertEquals(empty, bitap.bestMatches("", 20));
+	}
+	
+	@Test
+	public void wuBestMatchesAcrossWords() {
+		Random random = new Random(19);
+		String needle = randomSequence(random, 100);
+		Bitap bitap = new Bitap(needle, alphabet);
+		StringBuilder sb = new StringBuilder(randomSequence(random, 20000));
+		sb.insert(3000, needle.substring(0, 40) + "A" + needle.substring(40));
+		sb.insert(12000, needle.substring(0, 70) + needle.substring(71));
+		String haystack = sb.toString();
+		List<Match> test = new ArrayList<Match>();
+		for (Match match : bitap.myersMatches(haystack, 1)) {
+			if (match.getDistance() == 1) {
+				test.add(match);
+			}
+		}
+		assertFalse(test.isEmpty());
+		assertEquals(test, bitap.bestMatches(haystack));
+		assertEquals(test, bitap.bestMatches(haystack, 5));
+		assertTrue(bitap.bestMatches(haystack, 0).isEmpty());
+		List<Match> empty = new ArrayList<Match>();
+		empty.add(new Match(0, needle.length()));
+		assertEquals(empty, bitap.bestMatches("", 200));
+	}
+	
+	@Test
+	public void constructorCopiesAlphabet() {
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		Bitap bitap = Bitap.compile("ATTA", dna);
+		assertEquals(4, dna.size());
+		assertEquals(dna, bitap.getAlphabet());
+		dna.add('N');
+		assertEquals(4, bitap.getAlphabet().size());
+	}
+	
+	@Test
+	public void matcherMatchesBitap() throws InterruptedException {
+		final Random random = new Random(18);
+		final Bitap bitap = new Bitap("AGGGCGTAATGATTGT", alphabet);
+		final List<String> haystacks = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			StringBuilder sb = new StringBuilder(randomSequence(random, 200));
+			if (random.nextBoolean()) {
+				sb.insert(random.nextInt(sb.length()), "AGGGCGTCAATGATTGT");
+			}
+			haystacks.add(sb.toString());
+		}
+		final List<AssertionError> errors = Collections.synchronizedList(new ArrayList<AssertionError>());
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				BitapMatcher matcher = bitap.matcher();
+				try {
+					for (int lev = 0; lev <= 3; lev++) {
+						for (String haystack : haystacks) {
+							List<Integer> test = new ArrayList<Integer>();
+							matcher.wuManber(haystack, lev, test::add);
+							assertEquals(bitap.wuManber(haystack, lev), test);
+							assertEquals(!test.isEmpty(), matcher.within(haystack, lev));
+						}
+					}
+				} catch (AssertionError e) {
+					errors.add(e);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(errors.isEmpty());
+	}
+	
+	@Test
+	public void matcherReusesScratchAcrossNeedleKinds() {
+		Random random = new Random(180);
+		String needle = randomSequence(random, 100);
+		StringBuilder sb = new StringBuilder(randomSequence(random, 1000));
+		sb.insert(300, needle.substring(0, 40) + needle.substring(41));
+		String haystack = sb.toString();
+		for (Bitap bitap : new Bitap[] {new Bitap(needle, alphabet),
+				new Bitap(needle.substring(0, 20), alphabet)}) {
+			BitapMatcher matcher = bitap.matcher();
+			for (int lev : new int[] {3, 0, 1, 2}) {
+				for (CharSequence h : new CharSequence[] {haystack, new PackedDna(haystack)}) {
+					List<Integer> test = new ArrayList<Integer>();
+					matcher.wuManber(h, lev, test::add);
+					assertEquals(bitap.wuManber(haystack, lev), test);
+					assertEquals(!test.isEmpty(), matcher.within(h, lev));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void wuFindAmpersand() {
+		Character[] symbols = {'A', 'T', '&'};
+		Bitap bitap = new Bitap("T&A", symbols);
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(1);
+		test.add(5);
+		assertEquals(test, bitap.baezaYatesGonnet("AT&AAT&A"));
+		assertTrue(bitap.within("&&&", 2));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void wuRejectUnknownCharacter() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		bitap.wuManber("GATTANCA", 1);
+	}
+	
+	@Test
+	public void wuMismatchUnknownCharacter() throws IOException {
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		Bitap bitap = new Bitap("ATTA", dna, UnknownCharacters.MISMATCH);
+		String haystack = "GATNACATTAN";
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(6);
+		assertEquals(test, bitap.baezaYatesGonnet(haystack));
+		test.add(0, 1);
+		test.add(1, 5);
+		test.add(7);
+		assertEquals(test, bitap.wuManber(haystack, 1));
+		assertEquals(bitap.wuManber(haystack, 1), bitap.myers(haystack, 1));
+		assertArrayEquals(new int[] {6}, bitap.firstMatches(new String[] {haystack}));
+		
+		Path file = Files.createTempFile("bitap", ".txt");
+		try {
+			Files.write(file, haystack.getBytes(StandardCharsets.ISO_8859_1));
+			List<Long> mapped = new ArrayList<Long>();
+			bitap.wuManber(file, 1, mapped::add);
+			assertEquals(4, mapped.size());
+			assertEquals(Long.valueOf(1), mapped.get(0));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void wuPackedMatchesString() {
+		Random random = new Random(21);
+		String needle = "AGGGCGTAATGATTGT";
+		StringBuilder sb = new StringBuilder(randomSequence(random, 10000));
+		for (int i = 0; i < 20; i++) {
+			sb.insert(random.nextInt(sb.length()), "AGGGCGTCAATGATTGT");
+			sb.insert(random.nextInt(sb.length()), "NNNN");
+		}
+		String haystack = sb.toString();
+		PackedDna packed = new PackedDna(haystack);
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		Bitap bitap = new Bitap(needle, dna, UnknownCharacters.MISMATCH);
+		for (int lev = 0; lev <= 3; lev++) {
+			assertEquals(bitap.wuManber(haystack, lev), bitap.wuManber(packed, lev));
+			assertEquals(bitap.within(haystack, lev), bitap.within(packed, lev));
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void wuPackedRejectsAmbiguousBase() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		bitap.wuManber(new PackedDna("GATTANCA"), 1);
+	}
+	
+	@Test
+	public void wuFindDegenerateNeedle() {
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		Bitap bitap = new Bitap(CharacterClasses.iupac("ATRA"), dna);
+		assertEquals("AT[AG]A", bitap.getNeedle());
+		String haystack = "TGATAACATGATTAGATGAA";
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(2);
+		test.add(7);
+		test.add(15);
+		assertEquals(test, bitap.baezaYatesGonnet(haystack));
+		assertEquals(bitap.myers(haystack, 1), bitap.wuManber(haystack, 1));
+		assertEquals("4=", bitap.alignment(haystack, new Match(7, 0)));
+		
+		Bitap classes = new Bitap(CharacterClasses.parse("AT[AG]A"), dna);
+		assertEquals(bitap.wuManber(haystack, 1), classes.wuManber(haystack, 1));
+	}
+	
+	@Test
+	public void wuFindIgnoringCase() {
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		Bitap bitap = new Bitap("ATTa", dna, UnknownCharacters.REJECT,
+				Equivalences.NONE.ignoringCase());
+		assertEquals("ATTa", bitap.getNeedle());
+		String haystack = "gaTtaCAtgATtACatAttAgc";
+		Bitap upper = new Bitap("ATTA", dna);
+		String folded = haystack.toUpperCase();
+		assertEquals(upper.baezaYatesGonnet(folded), bitap.baezaYatesGonnet(haystack));
+		for (int lev = 0; lev <= 2; lev++) {
+			assertEquals(upper.wuManber(folded, lev), bitap.wuManber(haystack, lev));
+			assertEquals(upper.myers(folded, lev), bitap.myers(haystack, lev));
+		}
+		assertEquals("4=", bitap.alignment(haystack, new Match(1, 0)));
+	}
+	
+	@Test
+	public void wuFindWithEquivalentSymbol() {
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		Bitap bitap = new Bitap("AUUA", dna, UnknownCharacters.REJECT,
+				Equivalences.NONE.with('U', 'T'));
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(1);
+		test.add(8);
+		assertEquals(test, bitap.baezaYatesGonnet("GATTACAGAUTA"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void equivalentSymbolOutsideAlphabetIsRejected() {
+		Set<Character> dna = new HashSet<Character>(Arrays.asList(alphabet));
+		new Bitap("ATTA", dna, UnknownCharacters.REJECT, Equivalences.NONE.with('U', 'X'));
+	}
+	
+	@Test
+	public void hammingFindSubstitutionsOnly() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		String haystack = "GATTACAGACTA";
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(1);
+		test.add(8);
+		assertEquals(test, bitap.hamming(haystack, 1));
+		List<Match> matches = bitap.hammingMatches(haystack, 1);
+		assertEquals(new Match(1, 0), matches.get(0));
+		assertEquals(new Match(8, 1), matches.get(1));
+		assertEquals(Collections.singletonList(1), bitap.hamming(haystack, 0));
+		assertTrue(bitap.hamming("ATT", 4).isEmpty());
+	}
+	
+	@Test
+	public void hammingMatchesBruteForce() {
+		Random random = new Random(24);
+		// Short needles take the shift-add path, longer ones the rows
+		for (int length : new int[] {1, 12, 20, 32, 63, 64, 100, 150}) {
+			String needle = randomSequence(random, length);
+			StringBuilder sb = new StringBuilder(randomSequence(random, 2000));
+			for (int i = 0; i < 10; i++) {
+				char[] read = needle.toCharArray();
+				read[random.nextInt(read.length)] = alphabet[random.nextInt(alphabet.length)];
+				read[random.nextInt(read.length)] = alphabet[random.nextInt(alphabet.length)];
+				sb.insert(random.nextInt(sb.length()), read);
+			}
+			String haystack = sb.toString();
+			Bitap bitap = new Bitap(needle, alphabet);
+			for (int mismatches = 0; mismatches <= 4; mismatches++) {
+				List<Match> expected = bruteForceHamming(needle, haystack, mismatches);
+				assertEquals(expected, bitap.hammingMatches(haystack, mismatches));
+				assertEquals(expected.size(), bitap.hamming(haystack, mismatches).size());
+			}
+		}
+	}
+	
+	@Test
+	public void hammingFindEmptyNeedle() {
+		Bitap bitap = new Bitap("", alphabet);
+		assertEquals(bitap.wuManber("CC", 0), bitap.hamming("CC", 0));
+		assertEquals(new Match(2, 0), bitap.hammingMatches("CC", 1).get(2));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void hammingRejectsNegativeMismatches() {
+		new Bitap("ATTA", alphabet).hamming("GATTACA", -1);
+	}
+	
+	@Test
+	public void wuFindWeightedEdits() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		EditCosts indels = new EditCosts(2, 2, 1);
+		String haystack = "GATCTACAGACTA";
+		List<Integer> test = new ArrayList<Integer>();
+		test.add(9);
+		assertEquals(test, bitap.wuManber(haystack, 1, indels));
+		// The extra C, a deletion ("2=1D2=" as an alignment), costs two
+		assertEquals(new Match(1, 2), bitap.wuManberMatches(haystack, 2, indels).get(0));
+		assertEquals(bitap.wuManber(haystack, 2), bitap.wuManber(haystack, 2, EditCosts.UNIT));
+	}
+	
+	@Test
+	public void wuWeightedEditsFollowAlignment() {
+		Bitap bitap = new Bitap("ATTA", alphabet);
+		String haystack = "GATCTAG";
+		assertEquals("2=1D2=", bitap.alignment(haystack, new Match(1, 1)));
+		// Cheap deletions skip the C for one, and the G before it for another
+		List<Match> test = new ArrayList<Match>();
+		test.add(new Match(0, 2));
+		test.add(new Match(1, 1));
+		assertEquals(test, bitap.wuManberMatches(haystack, 3, new EditCosts(3, 1, 3)));
+		assertEquals(Collections.singletonList(new Match(1, 3)),
+				bitap.wuManberMatches(haystack, 3, new EditCosts(3, 3, 3)));
+	}
+	
+	@Test
+	public void wuWeightedMatchesBruteForce() {
+		Random random = new Random(25);
+		EditCosts[] models = {
+				EditCosts.UNIT,
+				new EditCosts(2, 2, 1),
+				new EditCosts(1, 3, 2),
+				new EditCosts(3, 1, 1)};
+		for (int length : new int[] {1, 9, 63, 64, 90}) {
+			String needle = randomSequence(random, length);
+			StringBuilder sb = new StringBuilder(randomSequence(random, 200));
+			for (int i = 0; i < 4; i++) {
+				StringBuilder read = new StringBuilder(needle);
+				read.insert(random.nextInt(read.length()), alphabet[random.nextInt(alphabet.length)]);
+				read.deleteCharAt(random.nextInt(read.length()));
+				read.setCharAt(random.nextInt(read.length()), alphabet[random.nextInt(alphabet.length)]);
+				sb.insert(random.nextInt(sb.length()), read);
+			}
+			String haystack = sb.toString();
+			Bitap bitap = new Bitap(needle, alphabet);
+			for (EditCosts costs : models) {
+				for (int maxCost = 0; maxCost <= 4; maxCost++) {
+					List<Match> expected = bruteForceMatches(needle, haystack, maxCost, costs);
+					assertEquals(costs + " " + maxCost, expected,
+							bitap.wuManberMatches(haystack, maxCost, costs));
+					assertEquals(expected.size(), bitap.wuManber(haystack, maxCost, costs).size());
+				}
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void freeEditsAreRejected() {
+		new EditCosts(0, 1, 1);
+	}
+}
@@ -0,0 +1,127 @@
+package bitap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds needles whose positions each accept a class of characters rather
+ * than a single one, for the Bitap constructors taking a List of Sets. A
+ * needle position matches any character of its class, so a degenerate
+ * primer is searched in a single pass rather than expanded into every
+ * concrete needle it stands for.
+ * 
+ * @author Mason M Lai
+ */
+public final class CharacterClasses {
+	private CharacterClasses() {
+	}
+	
+	/**
+	 * Parse a needle written with bracketed character classes, e.g.,
+	 * "AC[GT]A" for a needle whose third position accepts G or T. Characters
+	 * outside brackets accept only themselves.
+	 * 
+	 * @param pattern - the needle to parse
+	 * @return the class of characters accepted at each position
+	 * @throws IllegalArgumentException if a bracket is empty or unclosed
+	 */
+	public static List<Set<Character>> parse(String pattern) {
+		List<Set<Character>> classes = new ArrayList<Set<Character>>();
+		for (int i = 0; i < pattern.length(); i++) {
+			Set<Character> accepted = new TreeSet<Character>();
+			if (pattern.charAt(i) == '[') {
+				int close = pattern.indexOf(']', i + 1);
+				if (close < 0) {
+					throw new IllegalArgumentException("Unclosed '[' at position " + i + ": " + pattern);
+				}
+				if (close == i + 1) {
+					throw new IllegalArgumentException("Empty class at position " + i + ": " + pattern);
+				}
+				for (int j = i + 1; j < close; j++) {
+					accepted.add(pattern.charAt(j));
+				}
+				i = close;
+			} else {
+				accepted.add(pattern.charAt(i));
+			}
+			classes.add(Collections.unmodifiableSet(accepted));
+		}
+		return classes;
+	}
+	
+	/**
+	 * Expand a nucleotide sequence written in IUPAC codes, e.g., "ACGRN",
+	 * into the bases accepted at each position. U is read as T, and codes
+	 * are case-insensitive. Every position accepts only bases from A, C, G
+	 * and T; in particular, N accepts any base, but not an N of the haystack.
+	 * 
+	 * @param primer - the sequence to expand
+	 * @return the class of bases accepted at each position
+	 * @throws IllegalArgumentException if a character is not an IUPAC code
+	 */
+	public static List<Set<Character>> iupac(String primer) {
+		List<Set<Character>> classes = new ArrayList<Set<Character>>();
+		for (int i = 0; i < primer.length(); i++) {
+			String bases = iupacBases(Character.toUpperCase(primer.charAt(i)));
+			if (bases == null) {
+				throw new IllegalArgumentException("Not an IUPAC code at position " + i + ": "
+						+ primer.charAt(i));
+			}
+			Set<Character> accepted = new TreeSet<Character>();
+			for (int b = 0; b < bases.length(); b++) {
+				accepted.add(bases.charAt(b));
+			}
+			classes.add(Collections.unmodifiableSet(accepted));
+		}
+		return classes;
+	}
+	
+	/**
+	 * The bases an IUPAC nucleotide code stands for, or null if the
+	 * character is not a code.
+	 */
+	private static String iupacBases(char code) {
+		switch (code) {
+		case 'A': return "A";
+		case 'C': return "C";
+		case 'G': return "G";
+		case 'T': return "T";
+		case 'U': return "T";
+		case 'R': return "AG";
+		case 'Y': return "CT";
+		case 'S': return "CG";
+		case 'W': return "AT";
+		case 'K': return "GT";
+		case 'M': return "AC";
+		case 'B': return "CGT";
+		case 'D': return "AGT";
+		case 'H': return "ACT";
+		case 'V': return "ACG";
+		case 'N': return "ACGT";
+		default: return null;
+		}
+	}
+	
+	/**
+	 * Write out a needle of character classes in the bracketed form read by
+	 * parse(), with single characters written on their own.
+	 */
+	static String toString(List<Set<Character>> classes) {
+		StringBuilder sb = new StringBuilder();
+		for (Set<Character> accepted : classes) {
+			if (accepted.size() == 1) {
+				sb.append(accepted.iterator().next());
+				continue;
+			}
+			sb.append('[');
+			for (char c : new TreeSet<Character>(accepted)) {
+				sb.append(c);
+			}
+			sb.append(']');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,44 @@
+package bitap;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CharacterClassesTest {
+	private static Set<Character> set(Character... chars) {
+		return new HashSet<Character>(Arrays.asList(chars));
+	}
+	
+	@Test
+	public void parseBracketedClasses() {
+		List<Set<Character>> classes = CharacterClasses.parse("AC[GT]A");
+		assertEquals(4, classes.size());
+		assertEquals(set('A'), classes.get(0));
+		assertEquals(set('G', 'T'), classes.get(2));
+		assertEquals("AC[GT]A", CharacterClasses.toString(classes));
+	}
+	
+	@Test
+	public void expandIupacCodes() {
+		List<Set<Character>> classes = CharacterClasses.iupac("ARyN");
+		assertEquals(set('A'), classes.get(0));
+		assertEquals(set('A', 'G'), classes.get(1));
+		assertEquals(set('C', 'T'), classes.get(2));
+		assertEquals(set('A', 'C', 'G', 'T'), classes.get(3));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void unclosedBracket() {
+		CharacterClasses.parse("AC[GT");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void notAnIupacCode() {
+		CharacterClasses.iupac("ACGX");
+	}
+}
@@ -0,0 +1,88 @@
+package bitap;
+
+/**
+ * The cost of each kind of edit in an approximate match, for the weighted
+ * Wu-Manber search. Edits are named as in the CIGAR strings of
+ * Bitap.alignment(), with the needle as the query and the haystack as the
+ * reference: an insertion ('I') is a needle character missing from the
+ * haystack, a deletion ('D') a haystack character missing from the needle,
+ * and a substitution ('X') a needle character replaced by a different one.
+ * 
+ * Costs are positive integers, so that a sequencing-error model, e.g.,
+ * indels twice as likely as substitutions, is searched for directly rather
+ * than by filtering the matches of a looser unit-cost search.
+ * 
+ * @author Mason M Lai
+ */
+public final class EditCosts {
+	/**
+	 * Every edit costs one, as in the Levenshtein distance.
+	 */
+	public static final EditCosts UNIT = new EditCosts(1, 1, 1);
+	
+	private final int insertion;
+	private final int deletion;
+	private final int substitution;
+	
+	/**
+	 * EditCosts constructor.
+	 * @param insertion - the cost of a needle character missing from the
+	 * haystack.
+	 * @param deletion - the cost of a haystack character missing from the
+	 * needle.
+	 * @param substitution - the cost of a needle character replaced by a
+	 * different one.
+	 * @throws IllegalArgumentException if a cost is not positive
+	 */
+	public EditCosts(int insertion, int deletion, int substitution) {
+		if (insertion < 1 || deletion < 1 || substitution < 1) {
+			throw new IllegalArgumentException("Edit costs must be positive: insertion "
+					+ insertion + ", deletion " + deletion + ", substitution " + substitution);
+		}
+		this.insertion = insertion;
+		this.deletion = deletion;
+		this.substitution = substitution;
+	}
+	
+	/**
+	 * @return the cost of a needle character missing from the haystack
+	 */
+	public int getInsertion() {
+		return insertion;
+	}
+	
+	/**
+	 * @return the cost of a haystack character missing from the needle
+	 */
+	public int getDeletion() {
+		return deletion;
+	}
+	
+	/**
+	 * @return the cost of a needle character replaced by a different one
+	 */
+	public int getSubstitution() {
+		return substitution;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof EditCosts)) {
+			return false;
+		}
+		EditCosts other = (EditCosts) o;
+		return insertion == other.insertion && deletion == other.deletion
+				&& substitution == other.substitution;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (31 * insertion + deletion) * 31 + substitution;
+	}
+	
+	@Override
+	public String toString() {
+		return "EditCosts[insertion=" + insertion + ", deletion=" + deletion
+				+ ", substitution=" + substitution + "]";
+	}
+}
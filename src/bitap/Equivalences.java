@@ -0,0 +1,108 @@
+package bitap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Characters to be treated as the same symbol of the alphabet, e.g., the
+ * upper- and lowercase forms of a letter, or U and T in nucleic acids. The
+ * equivalences are compiled into the symbol codes of a Bitap, so each
+ * variant character of the needle or haystack is looked up as its symbol
+ * directly, and no haystack needs folding before a search.
+ * 
+ * Equivalences are immutable; each with-method returns a copy with one more
+ * equivalence.
+ * 
+ * @author Mason M Lai
+ */
+public final class Equivalences {
+	/**
+	 * No equivalences: each character is only itself.
+	 */
+	public static final Equivalences NONE =
+			new Equivalences(false, Collections.<Character, Character>emptyMap());
+	
+	private final boolean ignoreCase;
+	private final Map<Character, Character> variants;
+	
+	private Equivalences(boolean ignoreCase, Map<Character, Character> variants) {
+		this.ignoreCase = ignoreCase;
+		this.variants = variants;
+	}
+	
+	/**
+	 * Treat the upper- and lowercase forms of each symbol of the alphabet as
+	 * that symbol.
+	 * 
+	 * @return a copy of these equivalences, also ignoring case
+	 */
+	public Equivalences ignoringCase() {
+		return new Equivalences(true, variants);
+	}
+	
+	/**
+	 * Treat a character as a symbol of the alphabet. If the character is
+	 * itself a symbol, it is read as the given symbol from then on.
+	 * 
+	 * @param variant - the character to read as the symbol.
+	 * @param symbol - a symbol of the alphabet.
+	 * @return a copy of these equivalences, with the variant added
+	 */
+	public Equivalences with(char variant, char symbol) {
+		Map<Character, Character> copy = new HashMap<Character, Character>(variants);
+		copy.put(variant, symbol);
+		return new Equivalences(ignoreCase, Collections.unmodifiableMap(copy));
+	}
+	
+	/**
+	 * Resolve the equivalences against an alphabet, mapping each variant
+	 * character to the symbol it is read as. Case variants which are symbols
+	 * themselves are left alone, so an alphabet with both 'a' and 'A' keeps
+	 * them apart; explicit variants always apply.
+	 * 
+	 * @param alphabet - the symbols of the alphabet.
+	 * @return each variant character, mapped to its symbol
+	 * @throws IllegalArgumentException if a variant is read as a character
+	 * outside the alphabet
+	 */
+	Map<Character, Character> resolve(Set<Character> alphabet) {
+		Map<Character, Character> resolved = new HashMap<Character, Character>();
+		if (ignoreCase) {
+			for (char symbol : alphabet) {
+				char[] cases = {
+						Character.toUpperCase(symbol),
+						Character.toLowerCase(symbol),
+						Character.toTitleCase(symbol)};
+				for (char variant : cases) {
+					if (!alphabet.contains(variant) && !resolved.containsKey(variant)) {
+						resolved.put(variant, symbol);
+					}
+				}
+			}
+		}
+		for (Map.Entry<Character, Character> entry : variants.entrySet()) {
+			if (!alphabet.contains(entry.getValue())) {
+				throw new IllegalArgumentException("Character '" + entry.getValue()
+						+ "' is not in the alphabet");
+			}
+			resolved.put(entry.getKey(), entry.getValue());
+		}
+		return resolved;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Equivalences)) {
+			return false;
+		}
+		Equivalences other = (Equivalences) o;
+		return ignoreCase == other.ignoreCase && variants.equals(other.variants);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * variants.hashCode() + (ignoreCase ? 1 : 0);
+	}
+}
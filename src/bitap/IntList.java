@@ -0,0 +1,100 @@
+package bitap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A growable array of primitive ints, used to collect match positions
+ * without boxing each one. The Bitap algorithms scan haystacks from end to
+ * start, so positions are added in descending order and read back in
+ * reverse to give ascending order without sorting.
+ * 
+ * @author Mason M Lai
+ */
+final class IntList {
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private int[] values;
+	private int size;
+	
+	/**
+	 * IntList constructor. Creates an empty list.
+	 */
+	IntList() {
+		values = new int[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * Append a value to the end of the list, growing the backing array if
+	 * it is full.
+	 */
+	void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size << 1);
+		}
+		values[size++] = value;
+	}
+	
+	/**
+	 * Append all values of another list, in order.
+	 */
+	void addAll(IntList other) {
+		if (size + other.size > values.length) {
+			values = Arrays.copyOf(values, Math.max(size << 1, size + other.size));
+		}
+		System.arraycopy(other.values, 0, values, size, other.size);
+		size += other.size;
+	}
+	
+	int get(int index) {
+		return values[index];
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Empty the list, keeping the backing array for reuse.
+	 */
+	void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * Pass each value to the consumer, from last to first.
+	 */
+	void forEachReversed(IntConsumer consumer) {
+		for (int i = size - 1; i >= 0; i--) {
+			consumer.accept(values[i]);
+		}
+	}
+	
+	/**
+	 * A copy of the values as an ArrayList<Integer>, in order.
+	 */
+	List<Integer> toList() {
+		List<Integer> list = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(values[i]);
+		}
+		return list;
+	}
+	
+	/**
+	 * A copy of the values as an ArrayList<Integer>, from last to first.
+	 */
+	List<Integer> toReversedList() {
+		List<Integer> reversed = new ArrayList<Integer>(size);
+		for (int i = size - 1; i >= 0; i--) {
+			reversed.add(values[i]);
+		}
+		return reversed;
+	}
+}
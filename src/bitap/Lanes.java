@@ -0,0 +1,41 @@
+package bitap;
+
+/**
+ * Runs the Baeza-Yates-Gonnet recurrence over several haystacks at once, one
+ * haystack per lane. The scalar implementation processes the haystacks one
+ * after another. On JDKs with the incubating Vector API, a multi-release jar
+ * supplies VectorLanes, which advances a whole vector of haystacks per
+ * character; it is only used if the jdk.incubator.vector module has been
+ * added to the JVM.
+ * 
+ * @author Mason M Lai
+ */
+interface Lanes {
+	/**
+	 * Find the first exact match of a needle of at most 63 characters within
+	 * each haystack.
+	 * 
+	 * @param haystacks - the strings to search in.
+	 * @param symbols - the symbol coding of the alphabet.
+	 * @param masks - the alphabet masks of the needle, indexed by symbol code,
+	 * ending with the mask of ~1 for unknown characters, which also serves
+	 * lanes past the end of their haystack.
+	 * @param matchBit - the bit of the bit array which is clear on a match.
+	 * @param positions - receives the position of the first match within
+	 * each haystack, or -1 if there is none.
+	 */
+	void firstMatches(CharSequence[] haystacks, SymbolTable symbols, long[] masks, long matchBit,
+			int[] positions);
+	
+	/**
+	 * @return the vectorized implementation if it is available, or else the
+	 * scalar one
+	 */
+	static Lanes load() {
+		try {
+			return (Lanes) Class.forName("bitap.VectorLanes").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new ScalarLanes();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package bitap;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LanesTest {
+	private static Character[] alphabet = {'A', 'C', 'G', 'T'};
+	private static SymbolTable symbols = new SymbolTable(new HashSet<Character>(Arrays.asList(alphabet)));
+	
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet[random.nextInt(alphabet.length)]);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * The alphabet masks of a needle of at most 63 characters, as Bitap
+	 * builds them: bit pos + 1 is clear where the reversed needle has the
+	 * symbol at pos, and a final mask of ~1 matches nothing.
+	 */
+	private static long[] masks(String needle) {
+		long[] masks = new long[symbols.size() + 1];
+		Arrays.fill(masks, ~1L);
+		for (int code = 0; code < symbols.size(); code++) {
+			for (int pos = 0; pos < needle.length(); pos++) {
+				if (needle.charAt(needle.length() - 1 - pos) == symbols.symbol(code)) {
+					masks[code] &= ~(1L << (pos + 1));
+				}
+			}
+		}
+		return masks;
+	}
+	
+	/**
+	 * Haystacks of uneven lengths, from empty to several times the needle,
+	 * some holding the needle at their start or end. Their number is not a
+	 * multiple of any vector length, so the last group of lanes is partial.
+	 */
+	private static CharSequence[] haystacks(Random random, String needle) {
+		CharSequence[] haystacks = new CharSequence[37];
+		for (int h = 0; h < haystacks.length; h++) {
+			String haystack = randomSequence(random, random.nextInt(4 * needle.length() + 8));
+			switch (h % 4) {
+			case 1:
+				haystack = needle + haystack;
+				break;
+			case 2:
+				haystack = haystack + needle;
+				break;
+			case 3:
+				haystack = haystack.substring(0, haystack.length() / 8);
+				break;
+			}
+			haystacks[h] = haystack;
+		}
+		return haystacks;
+	}
+	
+	private static int[] firstMatches(Lanes lanes, CharSequence[] haystacks, String needle) {
+		int[] positions = new int[haystacks.length];
+		lanes.firstMatches(haystacks, symbols, masks(needle), 1L << needle.length(), positions);
+		return positions;
+	}
+	
+	@Test
+	public void scalarLanesFindFirstMatches() {
+		Random random = new Random(7);
+		for (int m : new int[] {1, 3, 8, 63}) {
+			String needle = randomSequence(random, m);
+			CharSequence[] haystacks = haystacks(random, needle);
+			int[] test = new int[haystacks.length];
+			for (int h = 0; h < haystacks.length; h++) {
+				test[h] = haystacks[h].toString().indexOf(needle);
+			}
+			assertArrayEquals(test, firstMatches(new ScalarLanes(), haystacks, needle));
+		}
+	}
+	
+	/**
+	 * Only runs where the multi-release jar supplies VectorLanes and the
+	 * jdk.incubator.vector module has been added to the JVM, as the tests
+	 * module does on JDK 16 and later.
+	 */
+	@Test
+	public void vectorLanesMatchScalarLanes() {
+		Lanes lanes = Lanes.load();
+		assumeFalse("VectorLanes is unavailable", lanes instanceof ScalarLanes);
+		assertEquals("bitap.VectorLanes", lanes.getClass().getName());
+		Random random = new Random(11);
+		for (int m : new int[] {1, 3, 8, 31, 63}) {
+			String needle = randomSequence(random, m);
+			CharSequence[] haystacks = haystacks(random, needle);
+			assertArrayEquals(firstMatches(new ScalarLanes(), haystacks, needle),
+					firstMatches(lanes, haystacks, needle));
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package bitap;
+
+/**
+ * A single approximate match of a needle within a haystack: the position
+ * where the match starts, and the distance between the needle and the
+ * closest substring starting there. The distance is measured by the search
+ * that found the match: the Levenshtein distance for wuManberMatches() and
+ * myersMatches(), the Hamming distance for hammingMatches(), or the total
+ * cost of the edits for a weighted search.
+ * 
+ * @author Mason M Lai
+ */
+public final class Match {
+	private final int position;
+	private final int distance;
+	
+	/**
+	 * Match constructor.
+	 * @param position - the position in the haystack where the match starts.
+	 * @param distance - the distance of the match.
+	 */
+	public Match(int position, int distance) {
+		this.position = position;
+		this.distance = distance;
+	}
+	
+	/**
+	 * @return the position in the haystack where the match starts
+	 */
+	public int getPosition() {
+		return position;
+	}
+	
+	/**
+	 * @return the distance between the needle and the closest substring of
+	 * the haystack starting at this position
+	 */
+	public int getDistance() {
+		return distance;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Match)) {
+			return false;
+		}
+		Match other = (Match) o;
+		return position == other.position && distance == other.distance;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * position + distance;
+	}
+	
+	@Override
+	public String toString() {
+		return position + ":" + distance;
+	}
+}
@@ -0,0 +1,17 @@
+package bitap;
+
+/**
+ * Receives matches of a needle as a search finds them.
+ * 
+ * @author Mason M Lai
+ */
+public interface MatchConsumer {
+	/**
+	 * Accept a single match.
+	 * @param start - the position in the haystack where the match starts.
+	 * @param end - the position in the haystack just past the match.
+	 * @param distance - the distance between the needle and the substring
+	 * [start, end), as measured by the search that found the match.
+	 */
+	void accept(long start, long end, int distance);
+}
@@ -0,0 +1,226 @@
+package bitap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bitap algorithms for searching many short needles in a single pass over
+ * the haystack. The needles are packed side by side into as few longs as
+ * possible, each needle taking its length plus one bits: a zero column at
+ * its right-most position, as in Bitap, followed by one bit per character.
+ * A single set of alphabet masks covers every needle, so each character of
+ * the haystack costs one mask lookup and a handful of word operations per
+ * long, no matter how many needles share that long.
+ * 
+ * As in Bitap, the haystack is scanned from end to start with reversed
+ * needles, so that the positions found are start positions even for
+ * approximate matches.
+ * 
+ * @author Mason M Lai
+ */
+public class MultiBitap {
+	/**
+	 * The longest needle that can be packed. Every needle must fit within a
+	 * single long, together with its zero column.
+	 */
+	private static final int NEEDLE_LIMIT = Long.SIZE - 1;
+	
+	private final List<String> needles;
+	private final SymbolTable symbols;
+	private final int[] offsets;
+	private final int words;
+	private final long[] startBits;
+	private final long[] endBits;
+	private final int[] patterns;
+	private final long[] alphabetMasks;
+	
+	/**
+	 * MultiBitap constructor.
+	 * @param needles - the substrings to search for, each at most 63
+	 * characters long. Matches are reported by index into this list.
+	 * @param alphabet - the total set of characters composing the needles
+	 * and the haystack.
+	 */
+	public MultiBitap(List<String> needles, Set<Character> alphabet) {
+		this.needles = new ArrayList<String>(needles);
+		symbols = new SymbolTable(alphabet);
+		offsets = new int[needles.size()];
+		words = pack();
+		startBits = new long[words];
+		endBits = new long[words];
+		patterns = new int[words * Long.SIZE];
+		for (int p = 0; p < offsets.length; p++) {
+			int offset = offsets[p];
+			startBits[offset / Long.SIZE] |= 1L << (offset % Long.SIZE);
+			endBits[offset / Long.SIZE] |= 1L << ((offset + length(p)) % Long.SIZE);
+			patterns[offset + length(p)] = p;
+		}
+		alphabetMasks = generateAlphabetMasks();
+	}
+	
+	/**
+	 * MultiBitap constructor.
+	 * @param needles - the substrings to search for, each at most 63
+	 * characters long. Matches are reported by index into this array.
+	 * @param alphabet - the total set of characters (as an array) composing
+	 * the needles and the haystack.
+	 */
+	public MultiBitap(String[] needles, Character[] alphabet) {
+		this(Arrays.asList(needles), new HashSet<Character>(Arrays.asList(alphabet)));
+	}
+	
+	private int length(int pattern) {
+		return needles.get(pattern).length();
+	}
+	
+	/**
+	 * Assign each needle the bit offset of its zero column, filling each long
+	 * before moving on to the next. A needle never straddles two longs.
+	 * 
+	 * @return the number of longs needed
+	 */
+	private int pack() {
+		int word = 0;
+		int bit = 0;
+		for (int p = 0; p < offsets.length; p++) {
+			if (length(p) > NEEDLE_LIMIT) {
+				throw new IllegalArgumentException("Needle " + p + " is longer than "
+						+ NEEDLE_LIMIT + " characters");
+			}
+			if (bit + length(p) + 1 > Long.SIZE) {
+				word++;
+				bit = 0;
+			}
+			offsets[p] = word * Long.SIZE + bit;
+			bit += length(p) + 1;
+		}
+		return bit == 0 ? word : word + 1;
+	}
+	
+	/**
+	 * Initialize the alphabet masks, one for each character of the alphabet,
+	 * indexed by symbol code. The mask of the symbol with code c occupies the
+	 * longs [c * words, (c + 1) * words). Within the mask, each needle's bits
+	 * are laid out exactly as in a single Bitap mask, shifted up to the
+	 * needle's offset.
+	 */
+	private long[] generateAlphabetMasks() {
+		long[] masks = new long[symbols.size() * words];
+		for (int code = 0; code < symbols.size(); code++) {
+			for (int w = 0; w < words; w++) {
+				masks[code * words + w] = ~startBits[w];
+			}
+			for (int p = 0; p < offsets.length; p++) {
+				String needle = needles.get(p);
+				for (int pos = 0; pos < needle.length(); pos++) {
+					if (symbols.symbol(code) == needle.charAt(needle.length() - 1 - pos)) {
+						int bit = offsets[p] + pos + 1;
+						masks[code * words + bit / Long.SIZE] &= ~(1L << (bit % Long.SIZE));
+					}
+				}
+			}
+		}
+		return masks;
+	}
+	
+	/**
+	 * The starting bit array, as in Bitap, with lev + 1 rows of words longs
+	 * each. Row k of every needle has its k + 1 right-most bits cleared, or
+	 * all of its bits, if the needle is no longer than k.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return the starting bit array
+	 */
+	private long[] generateBitArray(int lev) {
+		long[] bitArray = new long[(lev + 1) * words];
+		Arrays.fill(bitArray, ~0L);
+		for (int k = 0; k <= lev; k++) {
+			for (int p = 0; p < offsets.length; p++) {
+				for (int bit = 0; bit <= k && bit <= length(p); bit++) {
+					int index = offsets[p] + bit;
+					bitArray[k * words + index / Long.SIZE] &= ~(1L << (index % Long.SIZE));
+				}
+			}
+		}
+		return bitArray;
+	}
+	
+	/**
+	 * Baeza-Yates-Gonnet algorithm. Finds all exact matches of every needle
+	 * within a haystack.
+	 * 
+	 * @return an ArrayList<PatternMatch> containing the needle and start
+	 * position of each match, ordered by position, then by needle
+	 */
+	public List<PatternMatch> baezaYatesGonnet(CharSequence haystack) {
+		return wuManber(haystack, 0);
+	}
+	
+	/**
+	 * Wu-Manber algorithm. Finds all approximate (within a given Levenshtein
+	 * distance) matches of every needle within a haystack.
+	 * 
+	 * The needles never interfere with each other. A left-shift moves the top
+	 * bit of one needle into the zero column of the next. Row 0 clears the
+	 * zero columns again after every shift. Every other row is ANDed with the
+	 * previous value of the row above (the insertion term), whose zero
+	 * columns are always clear.
+	 * 
+	 * @param lev - the maximum Levenshtein distance for a substring match
+	 * @return an ArrayList<PatternMatch> containing the needle and start
+	 * position of each match, ordered by position, then by needle
+	 */
+	public List<PatternMatch> wuManber(CharSequence haystack, int lev) {
+		List<PatternMatch> locatedMatches = new ArrayList<PatternMatch>();
+		long[] bitArray = generateBitArray(lev);
+		int last = lev * words;
+		
+		// The empty substring at the very end of the haystack
+		collect(bitArray, last, haystack.length(), locatedMatches);
+		
+		for (int i = haystack.length() - 1; i >= 0; i--) {
+			int mask = symbols.code(haystack.charAt(i)) * words;
+			for (int w = 0; w < words; w++) {
+				long letter = alphabetMasks[mask + w];
+				long above = bitArray[w];
+				bitArray[w] = ((above << 1) | letter) & ~startBits[w];
+				for (int k = 1; k <= lev; k++) {
+					int row = k * words + w;
+					long old = bitArray[row];
+					long ins = above;
+					long sub = above << 1;
+					long del = bitArray[row - words] << 1;
+					long match = (old << 1) | letter;
+					bitArray[row] = ins & del & sub & match;
+					above = old;
+				}
+			}
+			collect(bitArray, last, i, locatedMatches);
+		}
+		
+		// Found in descending order of position, then of needle
+		Collections.reverse(locatedMatches);
+		return locatedMatches;
+	}
+	
+	/**
+	 * Add a match for every needle whose end bit is clear in the row
+	 * starting at the given offset of the bit array, in descending order of
+	 * needle, so that reversing the matches of the whole scan leaves them in
+	 * ascending order.
+	 */
+	private void collect(long[] bitArray, int row, int position, List<PatternMatch> locatedMatches) {
+		for (int w = words - 1; w >= 0; w--) {
+			long hits = ~bitArray[row + w] & endBits[w];
+			while (hits != 0) {
+				int bit = Long.SIZE - 1 - Long.numberOfLeadingZeros(hits);
+				locatedMatches.add(new PatternMatch(patterns[w * Long.SIZE + bit], position));
+				hits &= ~(1L << bit);
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package bitap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MultiBitapTest {
+	private static Character[] alphabet = {'A', 'C', 'G', 'T'};
+	
+	@Test
+	public void bygFindExactMatchesOfSeveralNeedles() {
+		String haystack = "TGATGCATTATTAGTAGATGC";
+		String[] needles = {"ATTA", "GATGC", "CCCC"};
+		MultiBitap bitap = new MultiBitap(needles, alphabet);
+		List<PatternMatch> pos = bitap.baezaYatesGonnet(haystack);
+		List<PatternMatch> test = new ArrayList<PatternMatch>();
+		test.add(new PatternMatch(1, 1));
+		test.add(new PatternMatch(0, 6));
+		test.add(new PatternMatch(0, 9));
+		test.add(new PatternMatch(1, 16));
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void bygOrderMatchesAtSamePositionByNeedle() {
+		String haystack = "GGATTCGG";
+		String[] needles = {"ATTC", "ATT", "AT"};
+		MultiBitap bitap = new MultiBitap(needles, alphabet);
+		List<PatternMatch> pos = bitap.baezaYatesGonnet(haystack);
+		List<PatternMatch> test = new ArrayList<PatternMatch>();
+		test.add(new PatternMatch(0, 2));
+		test.add(new PatternMatch(1, 2));
+		test.add(new PatternMatch(2, 2));
+		assertEquals(test, pos);
+	}
+	
+	@Test
+	public void wuFindApproximateMatchesAcrossWords() {
+		String haystack = "TGATGTTAATCTAGGGCGTAATGATTGTTAGATTAGATTAGTAGATGC";
+		String[] needles = {"GTTAGATCTAG", "AGGGCGTCAATGATTGT", "TTAGTAGATGC",
+				"TGATGTTAATCTAGGGCGTAATGATTGTT", "CCCCCCCCCCCC"};
+		MultiBitap multi = new MultiBitap(needles, alphabet);
+		List<PatternMatch> test = new ArrayList<PatternMatch>();
+		for (int p = 0; p < needles.length; p++) {
+			for (int position : new Bitap(needles[p], alphabet).wuManber(haystack, 1)) {
+				test.add(new PatternMatch(p, position));
+			}
+		}
+		Collections.sort(test);
+		assertFalse(test.isEmpty());
+		assertEquals(test, multi.wuManber(haystack, 1));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectNeedleLongerThanOneWord() {
+		StringBuilder needle = new StringBuilder();
+		for (int i = 0; i < 64; i++) {
+			needle.append('A');
+		}
+		new MultiBitap(new String[] {needle.toString()}, alphabet);
+	}
+}
@@ -0,0 +1,133 @@
+package bitap;
+
+/**
+ * A DNA sequence packed two bits per base, 32 bases to a long, with A, C, G
+ * and T coded as 0, 1, 2 and 3. Any other character (N, or another ambiguity
+ * code) is recorded in a side-mask of one bit per base, which is only
+ * allocated if the sequence contains one. A sequence thus takes between two
+ * and three bits per base, rather than the sixteen of a String.
+ * 
+ * Packing is lossy: lowercase bases read back as uppercase, and every
+ * ambiguous base reads back as 'N'. A PackedDna is a CharSequence, so it can
+ * be searched like any other haystack, but Bitap scans it a long of bases at
+ * a time, without decoding it into characters.
+ * 
+ * @author Mason M Lai
+ */
+public final class PackedDna implements CharSequence {
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+	
+	private final long[] bases;
+	private final long[] ambiguous;
+	private final int length;
+	
+	/**
+	 * PackedDna constructor.
+	 * @param sequence - the bases to pack.
+	 */
+	public PackedDna(CharSequence sequence) {
+		length = sequence.length();
+		bases = new long[(length + 31) >>> 5];
+		long[] unknown = null;
+		for (int i = 0; i < length; i++) {
+			int base = code(sequence.charAt(i));
+			if (base < 0) {
+				if (unknown == null) {
+					unknown = new long[(length + 63) >>> 6];
+				}
+				unknown[i >>> 6] |= 1L << i;
+			} else {
+				bases[i >>> 5] |= (long) base << (i << 1);
+			}
+		}
+		ambiguous = unknown;
+	}
+	
+	/**
+	 * The two-bit code of a base, or -1 for an ambiguous one.
+	 */
+	private static int code(char c) {
+		switch (c) {
+		case 'A': case 'a':
+			return 0;
+		case 'C': case 'c':
+			return 1;
+		case 'G': case 'g':
+			return 2;
+		case 'T': case 't':
+			return 3;
+		default:
+			return -1;
+		}
+	}
+	
+	/**
+	 * @return the packed bases, 32 to a long, with base i in bits
+	 * [2 * (i % 32), 2 * (i % 32) + 2) of long i / 32. Ambiguous bases are
+	 * packed as A.
+	 */
+	long[] bases() {
+		return bases;
+	}
+	
+	/**
+	 * @return the ambiguity side-mask, with bit i % 64 of long i / 64 set if
+	 * base i is ambiguous, or null if no base is
+	 */
+	long[] ambiguous() {
+		return ambiguous;
+	}
+	
+	/**
+	 * @param index - the position of a base
+	 * @return a boolean if the base is ambiguous
+	 */
+	public boolean isAmbiguous(int index) {
+		return ambiguous != null && (ambiguous[index >>> 6] & (1L << index)) != 0;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+		}
+		if (isAmbiguous(index)) {
+			return 'N';
+		}
+		return BASES[(int) (bases[index >>> 5] >>> (index << 1)) & 3];
+	}
+	
+	/**
+	 * Decodes only the bases in [start, end), so a short slice of a long
+	 * sequence costs no more than the slice itself.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end
+					+ ", length: " + length);
+		}
+		return decode(start, end);
+	}
+	
+	@Override
+	public String toString() {
+		return decode(0, length);
+	}
+	
+	/**
+	 * Decode the bases in [start, end) into a String.
+	 */
+	private String decode(int start, int end) {
+		StringBuilder sb = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			sb.append(charAt(i));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,44 @@
+package bitap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PackedDnaTest {
+	@Test
+	public void packedSequenceReadsBack() {
+		String sequence = "ACGTTGCAACGTACGTACGTACGTACGTACGTAC";
+		PackedDna packed = new PackedDna(sequence);
+		assertEquals(sequence.length(), packed.length());
+		assertEquals(sequence, packed.toString());
+		assertEquals("GTTG", packed.subSequence(2, 6).toString());
+		assertFalse(packed.isAmbiguous(0));
+	}
+	
+	@Test
+	public void ambiguousAndLowercaseBases() {
+		PackedDna packed = new PackedDna("acgtNNRYACGT");
+		assertEquals("ACGTNNNNACGT", packed.toString());
+		assertTrue(packed.isAmbiguous(4));
+		assertTrue(packed.isAmbiguous(7));
+		assertFalse(packed.isAmbiguous(8));
+	}
+	
+	@Test
+	public void subSequenceAcrossLongs() {
+		String sequence = "ACGTTGCAACGTACGTACGTACGTACGTACGTACNNACGTGGCA";
+		PackedDna packed = new PackedDna(sequence);
+		assertEquals(sequence.substring(30, 40), packed.subSequence(30, 40).toString());
+		assertEquals("", packed.subSequence(5, 5).toString());
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void subSequencePastEnd() {
+		new PackedDna("ACGT").subSequence(2, 5);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void charAtPastEnd() {
+		new PackedDna("ACGT").charAt(4);
+	}
+}
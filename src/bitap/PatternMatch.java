@@ -0,0 +1,64 @@
+package bitap;
+
+/**
+ * A single match of one of several needles within a haystack: which needle
+ * matched, and the position where the match starts. Ordered by position,
+ * then by needle.
+ * 
+ * @author Mason M Lai
+ */
+public final class PatternMatch implements Comparable<PatternMatch> {
+	private final int pattern;
+	private final int position;
+	
+	/**
+	 * PatternMatch constructor.
+	 * @param pattern - the index of the needle that matched.
+	 * @param position - the position in the haystack where the match starts.
+	 */
+	public PatternMatch(int pattern, int position) {
+		this.pattern = pattern;
+		this.position = position;
+	}
+	
+	/**
+	 * @return the index of the needle that matched
+	 */
+	public int getPattern() {
+		return pattern;
+	}
+	
+	/**
+	 * @return the position in the haystack where the match starts
+	 */
+	public int getPosition() {
+		return position;
+	}
+	
+	@Override
+	public int compareTo(PatternMatch other) {
+		if (position != other.position) {
+			return Integer.compare(position, other.position);
+		}
+		return Integer.compare(pattern, other.pattern);
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof PatternMatch)) {
+			return false;
+		}
+		PatternMatch other = (PatternMatch) o;
+		return pattern == other.pattern && position == other.position;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * position + pattern;
+	}
+	
+	@Override
+	public String toString() {
+		return pattern + "@" + position;
+	}
+}
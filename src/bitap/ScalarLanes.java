@@ -0,0 +1,25 @@
+package bitap;
+
+/**
+ * The scalar fallback for Lanes, searching the haystacks one at a time.
+ * 
+ * @author Mason M Lai
+ */
+final class ScalarLanes implements Lanes {
+	@Override
+	public void firstMatches(CharSequence[] haystacks, SymbolTable symbols, long[] masks, long matchBit,
+			int[] positions) {
+		for (int h = 0; h < haystacks.length; h++) {
+			CharSequence haystack = haystacks[h];
+			long bitArray = ~1;
+			int first = -1;
+			for (int i = haystack.length() - 1; i >= 0; i--) {
+				bitArray = (bitArray << 1) | masks[symbols.code(haystack.charAt(i))];
+				if (0 == (bitArray & matchBit)) {
+					first = i;
+				}
+			}
+			positions[h] = first;
+		}
+	}
+}
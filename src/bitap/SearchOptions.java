@@ -0,0 +1,94 @@
+package bitap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits on a single search: the most matches to report, the longest time to
+ * spend scanning, and a token that cancels the search from outside. Options
+ * are immutable; each with-method returns a copy with one limit changed, so a
+ * single instance can be shared between searches and threads.
+ * 
+ * @author Mason M Lai
+ */
+public final class SearchOptions {
+	/**
+	 * Options without any limit: every match is reported, and the search is
+	 * never cancelled.
+	 */
+	public static final SearchOptions NONE =
+			new SearchOptions(Integer.MAX_VALUE, Long.MAX_VALUE, null);
+	
+	private final int maxHits;
+	private final long timeoutNanos;
+	private final BooleanSupplier cancelled;
+	
+	private SearchOptions(int maxHits, long timeoutNanos, BooleanSupplier cancelled) {
+		this.maxHits = maxHits;
+		this.timeoutNanos = timeoutNanos;
+		this.cancelled = cancelled;
+	}
+	
+	/**
+	 * Stop searching once this many matches have been found. The matches
+	 * reported are always the ones with the lowest positions; a limit of one
+	 * finds only the first match.
+	 * 
+	 * @param maxHits - the most matches to report
+	 * @return a copy of these options with the given limit
+	 */
+	public SearchOptions withMaxHits(int maxHits) {
+		if (maxHits < 0) {
+			throw new IllegalArgumentException("Negative hit limit: " + maxHits);
+		}
+		return new SearchOptions(maxHits, timeoutNanos, cancelled);
+	}
+	
+	/**
+	 * Cancel the search if it runs longer than the given time, measured from
+	 * the start of each search.
+	 * 
+	 * @param timeout - the longest time a search may run
+	 * @param unit - the unit of the timeout
+	 * @return a copy of these options with the given timeout
+	 */
+	public SearchOptions withTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Negative timeout: " + timeout);
+		}
+		return new SearchOptions(maxHits, unit.toNanos(timeout), cancelled);
+	}
+	
+	/**
+	 * Cancel the search as soon as the token returns true. The token is
+	 * polled between blocks of the haystack, so it should be cheap, e.g.,
+	 * reading a volatile flag or comparing the time against a deadline.
+	 * 
+	 * @param cancelled - returns true once the search should stop
+	 * @return a copy of these options with the given token
+	 */
+	public SearchOptions withCancellation(BooleanSupplier cancelled) {
+		return new SearchOptions(maxHits, timeoutNanos, cancelled);
+	}
+	
+	/**
+	 * @return the most matches a search reports
+	 */
+	public int getMaxHits() {
+		return maxHits;
+	}
+	
+	/**
+	 * Check whether a search begun at the given time should stop.
+	 * 
+	 * @param startNanos - the value of System.nanoTime() when the search
+	 * began
+	 * @return a boolean if the search has timed out or been cancelled
+	 */
+	boolean isCancelled(long startNanos) {
+		if (timeoutNanos != Long.MAX_VALUE && System.nanoTime() - startNanos > timeoutNanos) {
+			return true;
+		}
+		return cancelled != null && cancelled.getAsBoolean();
+	}
+}
@@ -0,0 +1,180 @@
+package bitap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Translates the characters of an alphabet into compact symbol codes, which
+ * index the alphabet masks of the Bitap algorithms. Codes are assigned in
+ * ascending order of character, starting from zero. Variant characters
+ * (e.g., the lowercase forms of an uppercase alphabet) share the code of
+ * the symbol they are equivalent to. Characters outside the alphabet are
+ * either rejected, or all given the code size(), one past the last symbol,
+ * which indexes a mask that matches nothing.
+ * 
+ * @author Mason M Lai
+ */
+final class SymbolTable {
+	/**
+	 * Alphabets whose largest character falls below this bound are coded
+	 * through a dense table indexed directly by character. Sparse alphabets
+	 * (e.g., a handful of characters scattered across Unicode) fall back to a
+	 * binary search over the sorted characters instead.
+	 */
+	private static final int DENSE_LIMIT = 1 << 10;
+	
+	private final char[] symbols;
+	private final char[] keys;
+	private final int[] keyCodes;
+	private final int[] codes;
+	private final UnknownCharacters unknown;
+	
+	/**
+	 * SymbolTable constructor. Characters outside the alphabet are rejected.
+	 * @param alphabet - the total set of characters to code.
+	 */
+	SymbolTable(Set<Character> alphabet) {
+		this(alphabet, UnknownCharacters.REJECT, Equivalences.NONE);
+	}
+	
+	/**
+	 * SymbolTable constructor.
+	 * @param alphabet - the total set of characters to code.
+	 * @param unknown - how to code characters outside the alphabet.
+	 * @param equivalences - the characters to code as symbols of the
+	 * alphabet.
+	 */
+	SymbolTable(Set<Character> alphabet, UnknownCharacters unknown, Equivalences equivalences) {
+		symbols = generateSymbols(alphabet);
+		Map<Character, Character> variants = equivalences.resolve(alphabet);
+		keys = generateKeys(variants);
+		keyCodes = generateKeyCodes(variants);
+		codes = generateCodes();
+		this.unknown = unknown;
+	}
+	
+	/**
+	 * Collect the alphabet into a sorted array. The index of a character in
+	 * this array is its symbol code.
+	 */
+	private static char[] generateSymbols(Set<Character> alphabet) {
+		char[] sorted = new char[alphabet.size()];
+		int i = 0;
+		for (Character letter : alphabet) {
+			sorted[i++] = letter;
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+	
+	/**
+	 * Collect every character with a code, symbols and variants alike, into
+	 * a sorted array for binary search.
+	 */
+	private char[] generateKeys(Map<Character, Character> variants) {
+		Set<Character> all = new TreeSet<Character>(variants.keySet());
+		for (char symbol : symbols) {
+			all.add(symbol);
+		}
+		char[] sorted = new char[all.size()];
+		int i = 0;
+		for (Character letter : all) {
+			sorted[i++] = letter;
+		}
+		return sorted;
+	}
+	
+	/**
+	 * The symbol code of each key, in the same order as the keys.
+	 */
+	private int[] generateKeyCodes(Map<Character, Character> variants) {
+		int[] table = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			Character symbol = variants.get(keys[i]);
+			table[i] = Arrays.binarySearch(symbols, symbol != null ? symbol : keys[i]);
+		}
+		return table;
+	}
+	
+	/**
+	 * Build the dense character-to-code table, or return null if the alphabet
+	 * is too sparse for one. Characters of the table which are not in the
+	 * alphabet are given the code -1.
+	 */
+	private int[] generateCodes() {
+		if (keys.length == 0 || keys[keys.length - 1] >= DENSE_LIMIT) {
+			return null;
+		}
+		int[] table = new int[keys[keys.length - 1] + 1];
+		Arrays.fill(table, -1);
+		for (int i = 0; i < keys.length; i++) {
+			table[keys[i]] = keyCodes[i];
+		}
+		return table;
+	}
+	
+	/**
+	 * @return the number of symbols in the alphabet
+	 */
+	int size() {
+		return symbols.length;
+	}
+	
+	/**
+	 * @return the character with the given symbol code
+	 */
+	char symbol(int code) {
+		return symbols[code];
+	}
+	
+	/**
+	 * Look up the symbol code of a character.
+	 * 
+	 * @return the symbol code of the character, or size() if the character
+	 * is outside the alphabet and unknown characters mismatch
+	 * @throws IllegalArgumentException if the character is outside the
+	 * alphabet and unknown characters are rejected
+	 */
+	int code(char c) {
+		int code = find(c);
+		return code >= 0 ? code : unknown(c);
+	}
+	
+	/**
+	 * Look up the symbol code of a character, without handling characters
+	 * outside the alphabet.
+	 * 
+	 * @return the symbol code of the character, or a negative number if the
+	 * character is outside the alphabet
+	 */
+	int find(char c) {
+		if (codes != null) {
+			return c < codes.length ? codes[c] : -1;
+		}
+		int i = Arrays.binarySearch(keys, c);
+		return i >= 0 ? keyCodes[i] : -1;
+	}
+	
+	/**
+	 * @return the symbol a character is coded as, or the character itself if
+	 * it is outside the alphabet
+	 */
+	char canonical(char c) {
+		int code = find(c);
+		return code >= 0 ? symbols[code] : c;
+	}
+	
+	/**
+	 * The code of a character outside the alphabet. Kept out of code() so
+	 * that the common case stays small enough to inline.
+	 */
+	private int unknown(char c) {
+		if (unknown == UnknownCharacters.REJECT) {
+			throw new IllegalArgumentException(String.format(
+					"Character '%c' (U+%04X) is not in the alphabet", c, (int) c));
+		}
+		return symbols.length;
+	}
+}
@@ -0,0 +1,20 @@
+package bitap;
+
+/**
+ * What a search does on meeting a character of the haystack that is not in
+ * the alphabet.
+ * 
+ * @author Mason M Lai
+ */
+public enum UnknownCharacters {
+	/**
+	 * Throw an IllegalArgumentException naming the character.
+	 */
+	REJECT,
+	
+	/**
+	 * Treat the character as one that matches no position of the needle,
+	 * e.g., an 'N' in a DNA sequence over the alphabet ACGT.
+	 */
+	MISMATCH
+}